@@ -0,0 +1,33 @@
+package ua.nure.mpj.lb2;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application against an in-memory H2 database, so results track code paths run to run
+ * rather than Postgres performance.
+ */
+final class BenchmarkApplication {
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.url=jdbc:h2:mem:bench;MODE=PostgreSQL;NON_KEYWORDS=GROUPS",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                // Benchmarks measure throughput, admission control would only turn it into 429s and 503s
+                "--app.rate-limit.requests-per-second=0",
+                "--app.concurrency-limit.max-concurrent=0",
+                "--logging.level.root=WARN"
+        ));
+        args.addAll(List.of(extraArgs));
+        return SpringApplication.run(MpjLb2Application.class, args.toArray(new String[0]));
+    }
+}
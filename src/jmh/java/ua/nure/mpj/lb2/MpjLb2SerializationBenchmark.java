@@ -0,0 +1,64 @@
+package ua.nure.mpj.lb2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ua.nure.mpj.lb2.config.ConvertersConfig;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.requests.ScheduleItemCreateRequest;
+import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MpjLb2SerializationBenchmark {
+    @Param({"default", "tuned"})
+    private String mapperConfig;
+
+    private ObjectMapper mapper;
+    private PaginatedListResponse<ScheduleItem> page;
+    private byte[] createRequestJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        // "default" has the stock Spring Boot settings, "tuned" adds what ConvertersConfig registers
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if(mapperConfig.equals("tuned")) {
+            builder.factory(ConvertersConfig.jsonFactory()).modulesToInstall(new BlackbirdModule());
+        }
+        mapper = builder.build();
+
+        List<Group> groups = new ArrayList<>();
+        List<Subject> subjects = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            groups.add(new Group("group_" + i));
+            subjects.add(new Subject("Subject number " + i, "s" + i));
+        }
+
+        List<ScheduleItem> items = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            items.add(new ScheduleItem(groups.get(i % 5), subjects.get(i % 5), Date.valueOf("2025-05-19"), (byte) (i % 6), ScheduleItem.Type.values()[i % 4]));
+        }
+        page = new PaginatedListResponse<>(items, 10000);
+
+        createRequestJson = mapper.writeValueAsBytes(new ScheduleItemCreateRequest(1, 2, ScheduleItem.Type.LAB, Date.valueOf("2025-05-19"), (byte) 3));
+    }
+
+    @Benchmark
+    public byte[] serializeScheduleItemPage() throws Exception {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public ScheduleItemCreateRequest deserializeScheduleItemCreateRequest() throws Exception {
+        return mapper.readValue(createRequestJson, ScheduleItemCreateRequest.class);
+    }
+}
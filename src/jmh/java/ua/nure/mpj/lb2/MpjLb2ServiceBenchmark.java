@@ -0,0 +1,113 @@
+package ua.nure.mpj.lb2;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import ua.nure.mpj.lb2.controllers.GroupController;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.requests.ScheduleItemUpdateRequest;
+import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+import ua.nure.mpj.lb2.services.GroupService;
+import ua.nure.mpj.lb2.services.ScheduleItemService;
+import ua.nure.mpj.lb2.services.SubjectService;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MpjLb2ServiceBenchmark {
+    private static final int GROUPS = 20;
+    private static final int ITEMS = 5000;
+
+    private ConfigurableApplicationContext context;
+    private GroupService groupService;
+    private SubjectService subjectService;
+    private ScheduleItemService scheduleItemService;
+    private GroupController groupController;
+    private Group group;
+    private Subject subject;
+    private long middleId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("--spring.main.web-application-type=none");
+        groupService = context.getBean(GroupService.class);
+        subjectService = context.getBean(SubjectService.class);
+        scheduleItemService = context.getBean(ScheduleItemService.class);
+        groupController = context.getBean(GroupController.class);
+
+        List<Group> groups = new ArrayList<>();
+        for(int i = 0; i < GROUPS; i++) {
+            groups.add(groupService.save(new Group("group_" + i)));
+        }
+        subject = subjectService.save(new Subject("Subject", "s"));
+
+        List<ScheduleItem> items = new ArrayList<>();
+        LocalDate start = LocalDate.of(2025, 2, 3);
+        for(int i = 0; i < ITEMS; i++) {
+            int slot = i / GROUPS;
+            items.add(new ScheduleItem(groups.get(i % GROUPS), subject, Date.valueOf(start.plusDays(slot / 6)), (byte) (slot % 6), ScheduleItem.Type.LECTURE));
+        }
+        scheduleItemService.saveAll(items);
+
+        group = groups.get(0);
+        middleId = scheduleItemService.list(ITEMS / 100, 50).getContent().get(0).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<ScheduleItem> listScheduleItemsOffset() {
+        return scheduleItemService.list(ITEMS / 100, 50);
+    }
+
+    @Benchmark
+    public Slice<ScheduleItem> listScheduleItemsKeyset() {
+        return scheduleItemService.listAfter(middleId, 50);
+    }
+
+    @Benchmark
+    public Page<ScheduleItem> listGroupScheduleItems() {
+        return scheduleItemService.list(group, 0, 50);
+    }
+
+    @Benchmark
+    public Optional<ScheduleItem> getScheduleItem() {
+        return scheduleItemService.get(middleId);
+    }
+
+    @Benchmark
+    public PaginatedListResponse<Group> listGroupsClampedPageSize() {
+        return groupController.listGroups(1, 1000, true, false, new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));
+    }
+
+    // The previous PATCH path: load the item, load the referenced group and subject, then merge
+    @Benchmark
+    public ScheduleItem updateScheduleItemReadModifyWrite() {
+        ScheduleItem item = scheduleItemService.get(middleId).orElseThrow();
+        item.setGroup(groupService.get(group.getId()).orElseThrow());
+        item.setSubject(subjectService.get(subject.getId()).orElseThrow());
+        item.setType(ScheduleItem.Type.LAB);
+        return scheduleItemService.save(item);
+    }
+
+    @Benchmark
+    public ScheduleItem updateScheduleItemSingleStatement() {
+        return scheduleItemService.update(middleId, null, new ScheduleItemUpdateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LAB, null, null));
+    }
+}
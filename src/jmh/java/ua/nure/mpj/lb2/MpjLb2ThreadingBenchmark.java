@@ -0,0 +1,58 @@
+package ua.nure.mpj.lb2;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.services.GroupService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP load test comparing Tomcat on platform threads with virtual threads. Virtual threads need the
+ * benchmark to run on Java 21 (./gradlew -PjavaVersion=21 jmh), on older JDKs both params use platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(64)
+public class MpjLb2ThreadingBenchmark {
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                "--server.port=0",
+                "--server.tomcat.threads.max=32",
+                "--spring.datasource.hikari.maximum-pool-size=10",
+                "--spring.threads.virtual.enabled=" + virtualThreads
+        );
+
+        GroupService groupService = context.getBean(GroupService.class);
+        for(int i = 0; i < 100; i++) {
+            groupService.save(new Group("group_" + i));
+        }
+
+        String port = context.getEnvironment().getProperty("local.server.port");
+        client = HttpClient.newHttpClient();
+        request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/groups/?page_size=50")).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int listGroups() throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,27 @@
+package ua.nure.mpj.lb2.advices;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ua.nure.mpj.lb2.exceptions.ServiceOverloadedException;
+import ua.nure.mpj.lb2.exceptions.TooManyRequestsException;
+import ua.nure.mpj.lb2.responses.ErrorMessageResponse;
+
+@RestControllerAdvice
+public class AdmissionAdvice {
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorMessageResponse> tooManyRequestsHandler(TooManyRequestsException exc) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exc.getRetryAfterSeconds()))
+                .body(new ErrorMessageResponse(exc.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ErrorMessageResponse> serviceOverloadedHandler(ServiceOverloadedException exc) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorMessageResponse(exc.getMessage()));
+    }
+}
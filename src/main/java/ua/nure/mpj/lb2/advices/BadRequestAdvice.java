@@ -0,0 +1,17 @@
+package ua.nure.mpj.lb2.advices;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
+import ua.nure.mpj.lb2.responses.ErrorMessageResponse;
+
+@RestControllerAdvice
+public class BadRequestAdvice {
+    @ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorMessageResponse invalidRequestHandler(InvalidRequestException exc) {
+        return new ErrorMessageResponse(exc.getMessage());
+    }
+}
@@ -0,0 +1,31 @@
+package ua.nure.mpj.lb2.advices;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ua.nure.mpj.lb2.exceptions.DependentEntitiesException;
+import ua.nure.mpj.lb2.exceptions.SlotConflictException;
+import ua.nure.mpj.lb2.responses.ErrorMessageResponse;
+
+@RestControllerAdvice
+public class ConflictAdvice {
+    @ExceptionHandler(SlotConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorMessageResponse slotConflictHandler(SlotConflictException exc) {
+        return new ErrorMessageResponse(exc.getMessage());
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorMessageResponse optimisticLockingHandler(OptimisticLockingFailureException exc) {
+        return new ErrorMessageResponse("Entity was modified concurrently");
+    }
+
+    @ExceptionHandler(DependentEntitiesException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorMessageResponse dependentEntitiesHandler(DependentEntitiesException exc) {
+        return new ErrorMessageResponse(exc.getMessage());
+    }
+}
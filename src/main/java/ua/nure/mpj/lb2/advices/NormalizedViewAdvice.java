@@ -0,0 +1,51 @@
+package ua.nure.mpj.lb2.advices;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.responses.NormalizedScheduleItemListResponse;
+import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+
+/**
+ * Rewrites schedule item pages into {@link NormalizedScheduleItemListResponse} when the request has {@code view=normalized}.
+ * Applies to every list endpoint, in whichever format was negotiated.
+ */
+@RestControllerAdvice
+public class NormalizedViewAdvice implements ResponseBodyAdvice<Object> {
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return PaginatedListResponse.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request, ServerHttpResponse response) {
+        // The same URL is served as JSON or CBOR
+        response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+        if(!(body instanceof PaginatedListResponse<?> page) || !(request instanceof ServletServerHttpRequest servletRequest)) {
+            return body;
+        }
+        if(!"normalized".equals(servletRequest.getServletRequest().getParameter("view"))) {
+            return body;
+        }
+        // Decided by the declared element type, an empty page has no items to look at
+        if(!isScheduleItemPage(returnType)) {
+            return body;
+        }
+        return NormalizedScheduleItemListResponse.of((PaginatedListResponse<ScheduleItem>) page);
+    }
+
+    private static boolean isScheduleItemPage(MethodParameter returnType) {
+        Class<?> itemType = ResolvableType.forMethodParameter(returnType).as(PaginatedListResponse.class).getGeneric(0).resolve();
+        return itemType != null && ScheduleItem.class.isAssignableFrom(itemType);
+    }
+}
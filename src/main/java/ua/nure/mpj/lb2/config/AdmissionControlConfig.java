@@ -0,0 +1,49 @@
+package ua.nure.mpj.lb2.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Set;
+
+/**
+ * Per-client rate limiting in front of the controllers and a cap on concurrent database work behind them.
+ * Both are off unless their limit is set above zero.
+ */
+@Configuration
+public class AdmissionControlConfig implements WebMvcConfigurer {
+    private final double requestsPerSecond;
+    private final int burst;
+    private final Set<String> apiKeys;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionControlConfig(
+            @Value("${app.rate-limit.requests-per-second:0}") double requestsPerSecond,
+            @Value("${app.rate-limit.burst:0}") int burst,
+            @Value("${app.rate-limit.api-keys:}") Set<String> apiKeys,
+            MeterRegistry meterRegistry
+    ) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.apiKeys = apiKeys;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if(requestsPerSecond > 0) {
+            registry.addInterceptor(new RateLimitInterceptor(requestsPerSecond, Math.max(burst, 1), apiKeys, meterRegistry))
+                    .excludePathPatterns("/actuator/**");
+        }
+    }
+
+    @Bean
+    @ConditionalOnExpression("${app.concurrency-limit.max-concurrent:0} > 0")
+    public ConcurrencyLimitAspect concurrencyLimitAspect(@Value("${app.concurrency-limit.max-concurrent}") int maxConcurrent) {
+        return new ConcurrencyLimitAspect(maxConcurrent, meterRegistry);
+    }
+}
@@ -0,0 +1,59 @@
+package ua.nure.mpj.lb2.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import ua.nure.mpj.lb2.exceptions.ServiceOverloadedException;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps concurrent calls into {@link ua.nure.mpj.lb2.services.DatabaseBound} services. A call that finds no free
+ * permit fails right away with 503 instead of waiting for a pooled connection. Nested calls run under the permit
+ * of the outermost one. Ordered first so the permit is taken before a transaction grabs a connection.
+ */
+@Aspect
+public class ConcurrencyLimitAspect implements Ordered {
+    private static final ThreadLocal<Boolean> ADMITTED = new ThreadLocal<>();
+
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    public ConcurrencyLimitAspect(int maxConcurrent, MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.rejected = Counter.builder("http.requests.rejected")
+                .tag("reason", "concurrency_limit")
+                .description("Requests rejected before reaching a controller")
+                .register(meterRegistry);
+        Gauge.builder("service.calls.active", () -> maxConcurrent - permits.availablePermits())
+                .description("Database-bound service calls in progress")
+                .register(meterRegistry);
+    }
+
+    @Around("@within(ua.nure.mpj.lb2.services.DatabaseBound)")
+    public Object admit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if(ADMITTED.get() != null) {
+            return joinPoint.proceed();
+        }
+        if(!permits.tryAcquire()) {
+            rejected.increment();
+            throw new ServiceOverloadedException("Service is overloaded, try again later");
+        }
+        ADMITTED.set(Boolean.TRUE);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ADMITTED.remove();
+            permits.release();
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,57 @@
+package ua.nure.mpj.lb2.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.responses.NormalizedScheduleItemListResponse;
+import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+
+import java.util.List;
+
+@Configuration
+public class ConvertersConfig {
+    // Served for "Accept: application/cbor", built from Spring Boot's builder so spring.jackson.* settings apply too
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+
+    // Picked up by Spring Boot like any other Module bean, replaces reflective getter calls with generated lambdas
+    @Bean
+    public BlackbirdModule blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer jsonFactoryCustomizer() {
+        return builder -> builder.factory(jsonFactory());
+    }
+
+    // Resolves serializers for the response types up front instead of on the first request that needs them
+    @Bean
+    public SmartInitializingSingleton serializerWarmUp(ObjectMapper objectMapper) {
+        return () -> List.of(PaginatedListResponse.class, NormalizedScheduleItemListResponse.class, ScheduleItem.class, Group.class, Subject.class)
+                .forEach(objectMapper::canSerialize);
+    }
+
+    /**
+     * JSON factory whose read/write buffers come from a shared pool. The default pool is thread-local,
+     * which stops reusing anything once each request runs on its own virtual thread.
+     */
+    public static JsonFactory jsonFactory() {
+        return JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+                .build();
+    }
+}
@@ -0,0 +1,59 @@
+package ua.nure.mpj.lb2.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ua.nure.mpj.lb2.exceptions.TooManyRequestsException;
+import ua.nure.mpj.lb2.utils.TokenBucket;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Gives every client its own token bucket and rejects requests with 429 once it runs dry.
+ * Clients are told apart by the X-Api-Key header when it holds one of app.rate-limit.api-keys, otherwise by the
+ * remote address (behind a reverse proxy that needs server.forward-headers-strategy). Unknown keys are ignored,
+ * a client could otherwise get a fresh bucket for every request by making up keys.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final double requestsPerSecond;
+    private final int burst;
+    private final Set<String> apiKeys;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter rejected;
+
+    public RateLimitInterceptor(double requestsPerSecond, int burst, Set<String> apiKeys, MeterRegistry meterRegistry) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.apiKeys = Set.copyOf(apiKeys);
+        // A bucket that has not been touched for a while is full again, so dropping it changes nothing
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofSeconds((long) Math.ceil(burst / requestsPerSecond) + 60))
+                .maximumSize(100_000)
+                .build();
+        this.rejected = Counter.builder("http.requests.rejected")
+                .tag("reason", "rate_limit")
+                .description("Requests rejected before reaching a controller")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        TokenBucket bucket = buckets.get(clientId(request), k -> new TokenBucket(requestsPerSecond, burst));
+        long wait = bucket.tryAcquire();
+        if(wait > 0) {
+            rejected.increment();
+            throw new TooManyRequestsException("Too many requests", Math.max(1, Duration.ofNanos(wait).toSeconds()));
+        }
+        return true;
+    }
+
+    private String clientId(HttpServletRequest request) {
+        String apiKey = request.getHeader("X-Api-Key");
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,65 @@
+package ua.nure.mpj.lb2.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * Keeps a client on the primary database for a while after it wrote something, so that it does not read
+ * its own change back from a replica that has not caught up yet. Requests that write are pinned as a whole,
+ * since they may read before they write.
+ * Clients are told apart by the X-Client-Id header, falling back to the remote address.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesInterceptor(Duration window) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(PINNED_TO_PRIMARY.get());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if(isWrite(request) || recentWriters.getIfPresent(clientId(request)) != null) {
+            PINNED_TO_PRIMARY.set(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if(isWrite(request)) {
+            recentWriters.put(clientId(request), Boolean.TRUE);
+        }
+        PINNED_TO_PRIMARY.remove();
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return switch (request.getMethod()) {
+            case "GET", "HEAD", "OPTIONS" -> false;
+            default -> true;
+        };
+    }
+
+    private static String clientId(HttpServletRequest request) {
+        String clientId = request.getHeader("X-Client-Id");
+        return clientId != null ? clientId : request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,109 @@
+package ua.nure.mpj.lb2.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.CacheSettings;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Only active when app.datasource.replica.url is set, otherwise Spring Boot's single datasource is used.
+ * Read-only transactions go to the replica, everything else to the primary. In-memory caches must not be filled
+ * from the replica, so the loads behind them run in read-write transactions, Hibernate's second-level cache is
+ * turned off and the list ETags are not used (see ChangeCounterService).
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource.replica", name = "url")
+public class ReplicaRoutingConfig implements WebMvcConfigurer {
+    private final ReadYourWritesInterceptor readYourWritesInterceptor;
+
+    public ReplicaRoutingConfig(@Value("${app.datasource.replica.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        this.readYourWritesInterceptor = new ReadYourWritesInterceptor(readYourWritesWindow);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(readYourWritesInterceptor);
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("app.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+            DataSourceProperties properties,
+            @Value("${app.datasource.replica.url}") String url,
+            @Value("${app.datasource.replica.username:${spring.datasource.username}}") String username,
+            @Value("${app.datasource.replica.password:${spring.datasource.password}}") String password
+    ) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    // The proxy only takes a connection once the transaction has been marked read-only (or not)
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") DataSource primaryDataSource,
+            @Qualifier("replicaDataSource") DataSource replicaDataSource
+    ) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(new ReplicaDataSource(replicaDataSource, primaryDataSource));
+        return dataSource;
+    }
+
+    // Entities and query results loaded from the replica would otherwise be cached and served to every later read
+    @Bean
+    public HibernatePropertiesCustomizer replicaSecondLevelCacheCustomizer() {
+        return properties -> {
+            properties.put(CacheSettings.USE_SECOND_LEVEL_CACHE, false);
+            properties.put(CacheSettings.USE_QUERY_CACHE, false);
+        };
+    }
+
+    // Read-only connections for clients that ReadYourWritesInterceptor keeps on the primary come from there
+    static class ReplicaDataSource extends DelegatingDataSource {
+        private final DataSource primary;
+
+        ReplicaDataSource(DataSource replica, DataSource primary) {
+            super(replica);
+            this.primary = primary;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return ReadYourWritesInterceptor.isPinnedToPrimary() ? primary.getConnection() : super.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return ReadYourWritesInterceptor.isPinnedToPrimary() ? primary.getConnection(username, password) : super.getConnection(username, password);
+        }
+    }
+}
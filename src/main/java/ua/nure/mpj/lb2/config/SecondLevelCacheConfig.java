@@ -0,0 +1,66 @@
+package ua.nure.mpj.lb2.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.Subject;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Regions of Hibernate's second-level cache, backed by Caffeine through JCache and kept in this JVM.
+ * The manager is handed straight to Hibernate rather than exposed as a bean, which would make Spring's
+ * cache abstraction switch over to JCache as well.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+    public static final List<String> ENTITY_REGIONS = List.of(Group.CACHE_REGION, Subject.CACHE_REGION);
+    public static final List<String> QUERY_REGIONS = List.of(Group.BY_NAME_CACHE_REGION);
+
+    // Hibernate's own regions: results of queries without a region, and the table modification times they are checked against
+    private static final String DEFAULT_QUERY_REGION = "default-query-results-region";
+    private static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(
+            @Value("${app.second-level-cache.maximum-size:10000}") long maximumSize,
+            @Value("${app.second-level-cache.query-maximum-size:1000}") long queryMaximumSize,
+            @Value("${app.second-level-cache.expire-after-write:10m}") Duration expireAfterWrite
+    ) {
+        return properties -> {
+            CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+            for(String region : ENTITY_REGIONS) {
+                createRegion(cacheManager, region, OptionalLong.of(maximumSize), expireAfterWrite);
+            }
+            for(String region : QUERY_REGIONS) {
+                createRegion(cacheManager, region, OptionalLong.of(queryMaximumSize), expireAfterWrite);
+            }
+            createRegion(cacheManager, DEFAULT_QUERY_REGION, OptionalLong.of(queryMaximumSize), expireAfterWrite);
+            // Evicting a timestamp would let cached query results outlive a write, so this one is never bounded
+            createRegion(cacheManager, TIMESTAMPS_REGION, OptionalLong.empty(), null);
+            properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+        };
+    }
+
+    // The manager is shared by every context in the JVM (e.g. in tests), so a region may already be there
+    private static void createRegion(CacheManager cacheManager, String name, OptionalLong maximumSize, Duration expireAfterWrite) {
+        if(cacheManager.getCache(name) != null) {
+            return;
+        }
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(maximumSize);
+        if(expireAfterWrite != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        }
+        cacheManager.createCache(name, configuration);
+    }
+}
@@ -0,0 +1,46 @@
+package ua.nure.mpj.lb2.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves pooled id sequences past the ids already in their tables. Databases created while the ids still came
+ * from an identity column get a fresh sequence starting at 1 from ddl-auto, which would hand out taken ids.
+ * Runs once the schema is updated and before the server accepts requests.
+ */
+@Component
+@Lazy(false)
+public class SequenceInitializer {
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The EntityManagerFactory is only required so that ddl-auto has created the sequences by now
+    @Autowired
+    public SequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if(!"PostgreSQL".equals(database)) {
+            return;
+        }
+        initialize("schedule_items_seq", "schedule_items");
+        // Entries written while ids came from change_log_counter are ahead of the sequence
+        initialize("change_log_seq", "change_log");
+    }
+
+    // Never moves a sequence backwards, ids handed out by other instances stay unique
+    private void initialize(String sequence, String table) {
+        jdbcTemplate.execute(String.format(
+                "SELECT setval('%1$s', GREATEST((SELECT COALESCE(MAX(id), 0) FROM %2$s) + %3$d, (SELECT last_value FROM %1$s)))",
+                sequence, table, ALLOCATION_SIZE));
+    }
+}
@@ -0,0 +1,51 @@
+package ua.nure.mpj.lb2.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ua.nure.mpj.lb2.responses.CacheRegionStatsResponse;
+import ua.nure.mpj.lb2.responses.CacheStatsResponse;
+import ua.nure.mpj.lb2.services.SecondLevelCacheService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/caches")
+public class CacheController {
+    private final CacheManager cacheManager;
+    private final SecondLevelCacheService secondLevelCacheService;
+
+    @Autowired
+    public CacheController(CacheManager cacheManager, SecondLevelCacheService secondLevelCacheService) {
+        this.cacheManager = cacheManager;
+        this.secondLevelCacheService = secondLevelCacheService;
+    }
+
+    @GetMapping("/")
+    public List<CacheStatsResponse> listCacheStats() {
+        List<CacheStatsResponse> result = new ArrayList<>();
+        for(String name : cacheManager.getCacheNames()) {
+            if(!(cacheManager.getCache(name) instanceof CaffeineCache caffeineCache)) {
+                continue;
+            }
+
+            Cache<Object, Object> cache = caffeineCache.getNativeCache();
+            CacheStats stats = cache.stats();
+            result.add(new CacheStatsResponse(name, cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount()));
+        }
+
+        return result;
+    }
+
+    // Hibernate's second-level cache, separate from the Spring caches above
+    @GetMapping("/regions")
+    public List<CacheRegionStatsResponse> listCacheRegionStats() {
+        return secondLevelCacheService.regionStats();
+    }
+}
@@ -0,0 +1,43 @@
+package ua.nure.mpj.lb2.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
+import ua.nure.mpj.lb2.services.ChangeLogService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/changes")
+public class ChangeLogController {
+    private final ChangeLogService changeLogService;
+
+    @Autowired
+    public ChangeLogController(ChangeLogService changeLogService) {
+        this.changeLogService = changeLogService;
+    }
+
+    @GetMapping("/")
+    public DeferredResult<List<ChangeLogEntry>> listChanges(
+            @RequestParam(value = "since", defaultValue = "0") Long since,
+            @RequestParam(value = "limit", defaultValue = "100") Integer limit,
+            @RequestParam(value = "wait", defaultValue = "0") Integer waitSeconds
+    ) {
+        if(limit > 1000) {
+            limit = 1000;
+        } else if(limit < 1) {
+            limit = 1;
+        }
+        if(waitSeconds > 60) {
+            waitSeconds = 60;
+        } else if(waitSeconds < 0) {
+            waitSeconds = 0;
+        }
+
+        return changeLogService.poll(since, limit, waitSeconds * 1000L);
+    }
+}
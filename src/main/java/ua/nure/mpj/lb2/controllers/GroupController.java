@@ -1,18 +1,32 @@
 package ua.nure.mpj.lb2.controllers;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ua.nure.mpj.lb2.entities.Group;
 import ua.nure.mpj.lb2.entities.ScheduleItem;
 import ua.nure.mpj.lb2.exceptions.EntityNotFoundException;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
 import ua.nure.mpj.lb2.requests.GroupCreateRequest;
 import ua.nure.mpj.lb2.requests.GroupUpdateRequest;
+import ua.nure.mpj.lb2.responses.BulkDeleteResponse;
 import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+import ua.nure.mpj.lb2.responses.WeekTimetableResponse;
+import ua.nure.mpj.lb2.services.CalendarService;
+import ua.nure.mpj.lb2.services.ChangeCounterService;
 import ua.nure.mpj.lb2.services.GroupService;
 import ua.nure.mpj.lb2.services.ScheduleItemService;
+import ua.nure.mpj.lb2.services.TimetableService;
+import ua.nure.mpj.lb2.utils.Cursors;
 
+import java.io.IOException;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -20,17 +34,26 @@ import java.util.Optional;
 public class GroupController {
     private final GroupService groupService;
     private final ScheduleItemService scheduleItemService;
+    private final TimetableService timetableService;
+    private final ChangeCounterService changeCounterService;
+    private final CalendarService calendarService;
 
     @Autowired
-    public GroupController(GroupService groupService, ScheduleItemService scheduleItemService) {
+    public GroupController(GroupService groupService, ScheduleItemService scheduleItemService, TimetableService timetableService, ChangeCounterService changeCounterService, CalendarService calendarService) {
         this.groupService = groupService;
         this.scheduleItemService = scheduleItemService;
+        this.timetableService = timetableService;
+        this.changeCounterService = changeCounterService;
+        this.calendarService = calendarService;
     }
 
     @GetMapping("/")
     public PaginatedListResponse<Group> listGroups(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
-            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize,
+            @RequestParam(value = "with_count", defaultValue = "true") Boolean withCount,
+            @RequestParam(value = "approximate_count", defaultValue = "false") Boolean approximateCount,
+            WebRequest webRequest
     ) {
         if(pageSize > 100) {
             pageSize = 100;
@@ -38,22 +61,48 @@ public class GroupController {
             pageSize = 1;
         }
 
+        if(changeCounterService.listETagsEnabled() && webRequest.checkNotModified(changeCounterService.groupsETag())) {
+            return null;
+        }
+
+        if(!withCount || approximateCount) {
+            Slice<Group> result = groupService.listSlice(page - 1, pageSize);
+            Long count = withCount ? groupService.approximateCount() : null;
+            return new PaginatedListResponse<>(result.getContent(), count, null, result.hasNext());
+        }
+
         Page<Group> result = groupService.list(page - 1, pageSize);
         return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
     }
 
     @PostMapping("/")
     public Group createGroup(@RequestBody GroupCreateRequest createBody) {
-        Optional<Group> group = groupService.getByName(createBody.getName());
-        return group.orElseGet(() -> groupService.save(new Group(createBody.getName())));
+        if(createBody.getName() == null || createBody.getName().isEmpty()) {
+            throw new InvalidRequestException("Group name must not be empty");
+        }
+
+        return groupService.upsert(createBody.getName());
+    }
+
+    @PostMapping("/bulk")
+    public List<Group> createGroups(@RequestBody List<GroupCreateRequest> createBodies) {
+        List<String> names = createBodies.stream().map(GroupCreateRequest::getName).toList();
+        if(names.stream().anyMatch(name -> name == null || name.isEmpty())) {
+            throw new InvalidRequestException("Group names must not be empty");
+        }
+
+        return groupService.upsertAll(names);
     }
 
     @GetMapping("/{id}")
-    public Group getGroupById(@PathVariable long id) {
+    public Group getGroupById(@PathVariable long id, WebRequest webRequest) {
         Optional<Group> group = groupService.get(id);
         if(group.isEmpty()) {
             throw new EntityNotFoundException(String.format("Could not find group with id %d", id));
         }
+        if(webRequest.checkNotModified(String.format("\"%d\"", group.get().getVersion()))) {
+            return null;
+        }
         return group.get();
     }
 
@@ -74,10 +123,17 @@ public class GroupController {
             return group;
         }
 
-        group.setName(updateBody.getName());
-        groupService.save(group);
+        // The instance may be the one held by the groups cache, so it is left alone in case the save fails
+        return groupService.save(new Group(group.getId(), group.getVersion(), updateBody.getName()));
+    }
+
+    @DeleteMapping("/")
+    public BulkDeleteResponse deleteGroupEntities(@RequestParam(value = "ids") List<Long> ids) {
+        if(ids.size() > 1000) {
+            throw new InvalidRequestException("At most 1000 ids can be deleted at once");
+        }
 
-        return group;
+        return groupService.deleteAllById(ids);
     }
 
     @DeleteMapping("/{id}")
@@ -90,13 +146,44 @@ public class GroupController {
     public PaginatedListResponse<ScheduleItem> getGroupScheduleItems(
             @PathVariable long id,
             @RequestParam(value = "page", defaultValue = "1") Integer page,
-            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize,
+            @RequestParam(value = "after_id", required = false) Long afterId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "with_count", required = false) Boolean withCount,
+            WebRequest webRequest
     ) {
+        if(pageSize > 100) {
+            pageSize = 100;
+        } else if(pageSize < 1) {
+            pageSize = 1;
+        }
+
+        // Checked first, a deleted group must not keep answering 304 to clients holding its old tag
         Optional<Group> group = groupService.get(id);
         if(group.isEmpty()) {
             throw new EntityNotFoundException(String.format("Could not find entity with id %d", id));
         }
 
+        if(changeCounterService.listETagsEnabled() && webRequest.checkNotModified(changeCounterService.groupScheduleItemsETag(id))) {
+            return null;
+        }
+
+        if(cursor != null) {
+            afterId = Cursors.decode(cursor);
+        }
+        if(afterId != null) {
+            Slice<ScheduleItem> result = scheduleItemService.listAfter(group.get(), afterId, pageSize);
+            String nextCursor = result.hasNext() ? Cursors.encode(result.getContent().get(result.getNumberOfElements() - 1).getId()) : null;
+            // Keyset pages skip the COUNT unless it is asked for explicitly, e.g. on the first page
+            Long count = Boolean.TRUE.equals(withCount) ? scheduleItemService.count(group.get()) : null;
+            return new PaginatedListResponse<>(result.getContent(), count, nextCursor, result.hasNext());
+        }
+
+        if(Boolean.FALSE.equals(withCount)) {
+            Slice<ScheduleItem> result = scheduleItemService.listSlice(group.get(), page - 1, pageSize);
+            return new PaginatedListResponse<>(result.getContent(), null, null, result.hasNext());
+        }
+
         Page<ScheduleItem> result = scheduleItemService.list(group.get(), page - 1, pageSize);
 
         return new PaginatedListResponse<>(
@@ -104,4 +191,58 @@ public class GroupController {
                 result.getTotalElements()
         );
     }
+
+    @GetMapping("/{id}/scheduleItems/range")
+    public PaginatedListResponse<ScheduleItem> getGroupScheduleItemsInRange(
+            @PathVariable long id,
+            @RequestParam(value = "from") Date from,
+            @RequestParam(value = "to") Date to,
+            @RequestParam(value = "page", defaultValue = "1") Integer page,
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+    ) {
+        if(pageSize > 100) {
+            pageSize = 100;
+        } else if(pageSize < 1) {
+            pageSize = 1;
+        }
+        if(from.after(to)) {
+            throw new InvalidRequestException("\"from\" must not be after \"to\"");
+        }
+
+        Optional<Group> group = groupService.get(id);
+        if(group.isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find group with id %d", id));
+        }
+
+        Page<ScheduleItem> result = scheduleItemService.list(group.get(), from, to, page - 1, pageSize);
+        return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
+    }
+
+    @GetMapping("/{id}/timetable")
+    public WeekTimetableResponse getGroupTimetable(
+            @PathVariable long id,
+            @RequestParam(value = "date", required = false) Date date
+    ) {
+        if(groupService.get(id).isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find group with id %d", id));
+        }
+
+        return timetableService.getWeek(id, date == null ? LocalDate.now() : date.toLocalDate());
+    }
+
+    @GetMapping("/{id}/calendar.ics")
+    public void getGroupCalendar(@PathVariable long id, WebRequest webRequest, HttpServletResponse response) throws IOException {
+        Optional<Group> group = groupService.get(id);
+        if(group.isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find group with id %d", id));
+        }
+
+        if(webRequest.checkNotModified(calendarService.getETag(group.get()))) {
+            return;
+        }
+
+        response.setContentType("text/calendar");
+        response.setCharacterEncoding("UTF-8");
+        calendarService.writeGroupCalendar(group.get(), response.getOutputStream());
+    }
 }
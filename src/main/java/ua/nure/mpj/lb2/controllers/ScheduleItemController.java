@@ -1,20 +1,36 @@
 package ua.nure.mpj.lb2.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ua.nure.mpj.lb2.entities.Group;
 import ua.nure.mpj.lb2.entities.Subject;
 import ua.nure.mpj.lb2.entities.ScheduleItem;
 import ua.nure.mpj.lb2.exceptions.EntityNotFoundException;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
 import ua.nure.mpj.lb2.requests.ScheduleItemCreateRequest;
 import ua.nure.mpj.lb2.requests.ScheduleItemUpdateRequest;
+import ua.nure.mpj.lb2.responses.BulkDeleteResponse;
 import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+import ua.nure.mpj.lb2.responses.ScheduleItemImportResponse;
+import ua.nure.mpj.lb2.responses.SlotConflictResponse;
+import ua.nure.mpj.lb2.services.ChangeCounterService;
 import ua.nure.mpj.lb2.services.GroupService;
+import ua.nure.mpj.lb2.services.ScheduleItemExportService;
+import ua.nure.mpj.lb2.services.ScheduleItemImportService;
 import ua.nure.mpj.lb2.services.ScheduleItemService;
 import ua.nure.mpj.lb2.services.SubjectService;
+import ua.nure.mpj.lb2.utils.Cursors;
 
+import java.io.IOException;
+import java.sql.Date;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -23,18 +39,29 @@ public class ScheduleItemController {
     private final GroupService groupService;
     private final SubjectService subjectService;
     private final ScheduleItemService scheduleItemService;
+    private final ScheduleItemImportService scheduleItemImportService;
+    private final ScheduleItemExportService scheduleItemExportService;
+    private final ChangeCounterService changeCounterService;
 
     @Autowired
-    public ScheduleItemController(GroupService groupService, SubjectService subjectService, ScheduleItemService scheduleItemService) {
+    public ScheduleItemController(GroupService groupService, SubjectService subjectService, ScheduleItemService scheduleItemService, ScheduleItemImportService scheduleItemImportService, ScheduleItemExportService scheduleItemExportService, ChangeCounterService changeCounterService) {
         this.groupService = groupService;
         this.subjectService = subjectService;
         this.scheduleItemService = scheduleItemService;
+        this.scheduleItemImportService = scheduleItemImportService;
+        this.scheduleItemExportService = scheduleItemExportService;
+        this.changeCounterService = changeCounterService;
     }
 
     @GetMapping("/")
     public PaginatedListResponse<ScheduleItem> listScheduleItems(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
-            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize,
+            @RequestParam(value = "after_id", required = false) Long afterId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "with_count", required = false) Boolean withCount,
+            @RequestParam(value = "approximate_count", defaultValue = "false") Boolean approximateCount,
+            WebRequest webRequest
     ) {
         if(pageSize > 100) {
             pageSize = 100;
@@ -42,6 +69,27 @@ public class ScheduleItemController {
             pageSize = 1;
         }
 
+        if(changeCounterService.listETagsEnabled() && webRequest.checkNotModified(changeCounterService.scheduleItemsETag())) {
+            return null;
+        }
+
+        if(cursor != null) {
+            afterId = Cursors.decode(cursor);
+        }
+        if(afterId != null) {
+            Slice<ScheduleItem> result = scheduleItemService.listAfter(afterId, pageSize);
+            String nextCursor = result.hasNext() ? Cursors.encode(result.getContent().get(result.getNumberOfElements() - 1).getId()) : null;
+            // Keyset pages skip the COUNT unless it is asked for explicitly, e.g. on the first page
+            Long count = Boolean.TRUE.equals(withCount) ? (approximateCount ? scheduleItemService.approximateCount() : scheduleItemService.count()) : null;
+            return new PaginatedListResponse<>(result.getContent(), count, nextCursor, result.hasNext());
+        }
+
+        if(Boolean.FALSE.equals(withCount) || approximateCount) {
+            Slice<ScheduleItem> result = scheduleItemService.listSlice(page - 1, pageSize);
+            Long count = Boolean.FALSE.equals(withCount) ? null : scheduleItemService.approximateCount();
+            return new PaginatedListResponse<>(result.getContent(), count, null, result.hasNext());
+        }
+
         Page<ScheduleItem> result = scheduleItemService.list(page - 1, pageSize);
         return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
     }
@@ -70,8 +118,47 @@ public class ScheduleItemController {
         return scheduleItemService.save(new ScheduleItem(group, subject, createBody.getDate(), createBody.getPosition(), createBody.getType()));
     }
 
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ScheduleItemImportResponse importScheduleItems(HttpServletRequest request) throws IOException {
+        return scheduleItemImportService.importItems(request.getInputStream());
+    }
+
+    @GetMapping("/export")
+    public void exportScheduleItems(
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestParam(value = "group_id", required = false) Long groupId,
+            @RequestParam(value = "from", required = false) Date from,
+            @RequestParam(value = "to", required = false) Date to,
+            HttpServletResponse response
+    ) throws IOException {
+        switch (format) {
+            case "ndjson" -> {
+                response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+                scheduleItemExportService.exportNdjson(groupId, from, to, response.getOutputStream());
+            }
+            case "csv" -> {
+                response.setContentType("text/csv");
+                response.setCharacterEncoding("UTF-8");
+                scheduleItemExportService.exportCsv(groupId, from, to, response.getOutputStream());
+            }
+            default -> throw new InvalidRequestException(String.format("Unsupported export format \"%s\"", format));
+        }
+    }
+
+    // Only finds anything on databases whose rows predate the unique slot index, which ddl-auto then fails
+    // to create. Used to clean such data up before the index can be added, afterwards it is always empty.
+    @GetMapping("/conflicts")
+    public List<SlotConflictResponse> listSlotConflicts() {
+        return scheduleItemService.findConflicts();
+    }
+
     @GetMapping("/{id}")
-    public ScheduleItem getScheduleItemById(@PathVariable long id) {
+    public ScheduleItem getScheduleItemById(@PathVariable long id, WebRequest webRequest) {
+        Optional<String> etag = scheduleItemService.getETag(id);
+        if(etag.isPresent() && webRequest.checkNotModified(etag.get())) {
+            return null;
+        }
+
         Optional<ScheduleItem> scheduleItem = scheduleItemService.get(id);
         if(scheduleItem.isEmpty()) {
             throw new EntityNotFoundException(String.format("Could not find schedule item with id %d", id));
@@ -80,31 +167,40 @@ public class ScheduleItemController {
     }
 
     @PatchMapping("/{id}")
-    public ScheduleItem updateScheduleItemEntity(@PathVariable long id, @RequestBody ScheduleItemUpdateRequest updateBody) {
-        Optional<ScheduleItem> scheduleItemOpt = scheduleItemService.get(id);
-        if(scheduleItemOpt.isEmpty()) {
-            throw new EntityNotFoundException(String.format("Could not find schedule item with id %d", id));
-        }
-
-        ScheduleItem scheduleItem = scheduleItemOpt.get();
+    public ScheduleItem updateScheduleItemEntity(
+            @PathVariable long id,
+            @RequestBody ScheduleItemUpdateRequest updateBody,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch
+    ) {
+        return scheduleItemService.update(id, ScheduleItemService.parseVersion(ifMatch).orElse(null), updateBody);
+    }
 
-        if(updateBody.getGroupId() != null) {
-            scheduleItem.setGroup(getGroupOrThrow(updateBody.getGroupId()));
-        }
-        if(updateBody.getSubjectId() != null) {
-            scheduleItem.setSubject(getSubjectOrThrow(updateBody.getSubjectId()));
+    @DeleteMapping("/")
+    public BulkDeleteResponse deleteScheduleItemEntities(
+            @RequestParam(value = "ids", required = false) List<Long> ids,
+            @RequestParam(value = "group_id", required = false) Long groupId,
+            @RequestParam(value = "from", required = false) Date from,
+            @RequestParam(value = "to", required = false) Date to,
+            @RequestParam(value = "all", defaultValue = "false") Boolean allGroups
+    ) {
+        if(ids != null) {
+            if(ids.size() > 1000) {
+                throw new InvalidRequestException("At most 1000 ids can be deleted at once");
+            }
+            return new BulkDeleteResponse(scheduleItemService.deleteAllById(ids), null);
         }
-        if(updateBody.getType() != null) {
-            scheduleItem.setType(updateBody.getType());
+
+        if(from == null || to == null) {
+            throw new InvalidRequestException("Either \"ids\" or both \"from\" and \"to\" are required");
         }
-        if(updateBody.getDate() != null) {
-            scheduleItem.setDate(updateBody.getDate());
+        if(from.after(to)) {
+            throw new InvalidRequestException("\"from\" must not be after \"to\"");
         }
-        if(updateBody.getPosition() != null) {
-            scheduleItem.setPosition(updateBody.getPosition());
+        // Deleting a date range across every group has to be asked for explicitly
+        if(groupId == null && !allGroups) {
+            throw new InvalidRequestException("Either \"group_id\" or \"all=true\" is required to delete by date");
         }
-
-        return scheduleItemService.save(scheduleItem);
+        return new BulkDeleteResponse(scheduleItemService.deleteAllByDateBetween(groupId, from, to), null);
     }
 
     @DeleteMapping("/{id}")
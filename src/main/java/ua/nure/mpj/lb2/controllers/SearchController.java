@@ -0,0 +1,47 @@
+package ua.nure.mpj.lb2.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
+import ua.nure.mpj.lb2.responses.SearchResponse;
+import ua.nure.mpj.lb2.services.SearchService;
+
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+    private final SearchService searchService;
+
+    @Autowired
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    @GetMapping("/")
+    public SearchResponse search(
+            @RequestParam(value = "q") String query,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit
+    ) {
+        if(limit > 50) {
+            limit = 50;
+        } else if(limit < 1) {
+            limit = 1;
+        }
+        query = query.trim();
+        if(query.isEmpty()) {
+            throw new InvalidRequestException("\"q\" must not be empty");
+        }
+
+        if(type == null) {
+            return new SearchResponse(searchService.searchGroups(query, limit), searchService.searchSubjects(query, limit));
+        }
+        return switch (type) {
+            case "group" -> new SearchResponse(searchService.searchGroups(query, limit), null);
+            case "subject" -> new SearchResponse(null, searchService.searchSubjects(query, limit));
+            default -> throw new InvalidRequestException(String.format("Unsupported search type \"%s\"", type));
+        };
+    }
+}
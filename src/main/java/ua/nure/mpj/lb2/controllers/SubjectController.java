@@ -2,31 +2,49 @@ package ua.nure.mpj.lb2.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
 import ua.nure.mpj.lb2.entities.Subject;
 import ua.nure.mpj.lb2.exceptions.EntityNotFoundException;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
 import ua.nure.mpj.lb2.requests.SubjectCreateRequest;
 import ua.nure.mpj.lb2.requests.SubjectUpdateRequest;
+import ua.nure.mpj.lb2.responses.BulkDeleteResponse;
 import ua.nure.mpj.lb2.responses.PaginatedListResponse;
+import ua.nure.mpj.lb2.responses.SubjectStatisticsResponse;
+import ua.nure.mpj.lb2.services.ChangeCounterService;
+import ua.nure.mpj.lb2.services.ScheduleItemService;
 import ua.nure.mpj.lb2.services.SubjectService;
+import ua.nure.mpj.lb2.utils.Cursors;
 
+import java.sql.Date;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/subjects")
 public class SubjectController {
     private final SubjectService subjectService;
+    private final ScheduleItemService scheduleItemService;
+    private final ChangeCounterService changeCounterService;
 
     @Autowired
-    public SubjectController(SubjectService subjectService) {
+    public SubjectController(SubjectService subjectService, ScheduleItemService scheduleItemService, ChangeCounterService changeCounterService) {
         this.subjectService = subjectService;
+        this.scheduleItemService = scheduleItemService;
+        this.changeCounterService = changeCounterService;
     }
 
     @GetMapping("/")
     public PaginatedListResponse<Subject> listSubjects(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
-            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize,
+            @RequestParam(value = "with_count", defaultValue = "true") Boolean withCount,
+            @RequestParam(value = "approximate_count", defaultValue = "false") Boolean approximateCount,
+            WebRequest webRequest
     ) {
         if(pageSize > 100) {
             pageSize = 100;
@@ -34,6 +52,16 @@ public class SubjectController {
             pageSize = 1;
         }
 
+        if(changeCounterService.listETagsEnabled() && webRequest.checkNotModified(changeCounterService.subjectsETag())) {
+            return null;
+        }
+
+        if(!withCount || approximateCount) {
+            Slice<Subject> result = subjectService.listSlice(page - 1, pageSize);
+            Long count = withCount ? subjectService.approximateCount() : null;
+            return new PaginatedListResponse<>(result.getContent(), count, null, result.hasNext());
+        }
+
         Page<Subject> result = subjectService.list(page - 1, pageSize);
         return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
     }
@@ -44,11 +72,14 @@ public class SubjectController {
     }
 
     @GetMapping("/{id}")
-    public Subject getSubjectById(@PathVariable long id) {
+    public Subject getSubjectById(@PathVariable long id, WebRequest webRequest) {
         Optional<Subject> subject = subjectService.get(id);
         if(subject.isEmpty()) {
             throw new EntityNotFoundException(String.format("Could not find subject with id %d", id));
         }
+        if(webRequest.checkNotModified(String.format("\"%d\"", subject.get().getVersion()))) {
+            return null;
+        }
         return subject.get();
     }
 
@@ -65,10 +96,17 @@ public class SubjectController {
             return subject;
         }
 
-        subject.setName(updateBody.getName());
-        subjectService.save(subject);
+        // The instance may be the one held by the subjects cache, so it is left alone in case the save fails
+        return subjectService.save(new Subject(subject.getId(), subject.getVersion(), updateBody.getName(), subject.getShortName()));
+    }
 
-        return subject;
+    @DeleteMapping("/")
+    public BulkDeleteResponse deleteSubjectEntities(@RequestParam(value = "ids") List<Long> ids) {
+        if(ids.size() > 1000) {
+            throw new InvalidRequestException("At most 1000 ids can be deleted at once");
+        }
+
+        return subjectService.deleteAllById(ids);
     }
 
     @DeleteMapping("/{id}")
@@ -76,4 +114,93 @@ public class SubjectController {
     public void deleteSubjectEntityById(@PathVariable long id) {
         subjectService.deleteById(id);
     }
+
+    @GetMapping("/{id}/scheduleItems")
+    public PaginatedListResponse<ScheduleItem> getSubjectScheduleItems(
+            @PathVariable long id,
+            @RequestParam(value = "page", defaultValue = "1") Integer page,
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize,
+            @RequestParam(value = "after_id", required = false) Long afterId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "with_count", required = false) Boolean withCount,
+            WebRequest webRequest
+    ) {
+        if(pageSize > 100) {
+            pageSize = 100;
+        } else if(pageSize < 1) {
+            pageSize = 1;
+        }
+
+        // Checked first, a deleted subject must not keep answering 304 to clients holding its old tag
+        Optional<Subject> subject = subjectService.get(id);
+        if(subject.isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find subject with id %d", id));
+        }
+
+        if(changeCounterService.listETagsEnabled() && webRequest.checkNotModified(changeCounterService.scheduleItemsETag())) {
+            return null;
+        }
+
+        if(cursor != null) {
+            afterId = Cursors.decode(cursor);
+        }
+        if(afterId != null) {
+            Slice<ScheduleItem> result = scheduleItemService.listAfter(subject.get(), afterId, pageSize);
+            String nextCursor = result.hasNext() ? Cursors.encode(result.getContent().get(result.getNumberOfElements() - 1).getId()) : null;
+            // Keyset pages skip the COUNT unless it is asked for explicitly, e.g. on the first page
+            Long count = Boolean.TRUE.equals(withCount) ? scheduleItemService.count(subject.get()) : null;
+            return new PaginatedListResponse<>(result.getContent(), count, nextCursor, result.hasNext());
+        }
+
+        if(Boolean.FALSE.equals(withCount)) {
+            Slice<ScheduleItem> result = scheduleItemService.listSlice(subject.get(), page - 1, pageSize);
+            return new PaginatedListResponse<>(result.getContent(), null, null, result.hasNext());
+        }
+
+        Page<ScheduleItem> result = scheduleItemService.list(subject.get(), page - 1, pageSize);
+        return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
+    }
+
+    @GetMapping("/{id}/statistics")
+    public SubjectStatisticsResponse getSubjectStatistics(
+            @PathVariable long id,
+            @RequestParam(value = "from", required = false) Date from,
+            @RequestParam(value = "to", required = false) Date to
+    ) {
+        if(from != null && to != null && from.after(to)) {
+            throw new InvalidRequestException("\"from\" must not be after \"to\"");
+        }
+
+        if(subjectService.get(id).isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find subject with id %d", id));
+        }
+
+        return scheduleItemService.subjectStatistics(id, from, to);
+    }
+
+    @GetMapping("/{id}/scheduleItems/range")
+    public PaginatedListResponse<ScheduleItem> getSubjectScheduleItemsInRange(
+            @PathVariable long id,
+            @RequestParam(value = "from") Date from,
+            @RequestParam(value = "to") Date to,
+            @RequestParam(value = "page", defaultValue = "1") Integer page,
+            @RequestParam(value = "page_size", defaultValue = "50") Integer pageSize
+    ) {
+        if(pageSize > 100) {
+            pageSize = 100;
+        } else if(pageSize < 1) {
+            pageSize = 1;
+        }
+        if(from.after(to)) {
+            throw new InvalidRequestException("\"from\" must not be after \"to\"");
+        }
+
+        Optional<Subject> subject = subjectService.get(id);
+        if(subject.isEmpty()) {
+            throw new EntityNotFoundException(String.format("Could not find subject with id %d", id));
+        }
+
+        Page<ScheduleItem> result = scheduleItemService.list(subject.get(), from, to, page - 1, pageSize);
+        return new PaginatedListResponse<>(result.getContent(), result.getTotalElements());
+    }
 }
@@ -0,0 +1,61 @@
+package ua.nure.mpj.lb2.entities;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+@Entity
+@Table(name = "change_log", indexes = {
+        @Index(name = "change_log_created_at_idx", columnList = "created_at"),
+})
+@Getter
+@NoArgsConstructor
+public class ChangeLogEntry {
+    // Handed out in increasing order within one instance, see ChangeLogService for how readers deal with commit order
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_log_seq")
+    @SequenceGenerator(name = "change_log_seq", sequenceName = "change_log_seq", allocationSize = 50)
+    private long id;
+
+    @Column(nullable = false)
+    @JsonProperty(value = "entity_type")
+    private EntityType entityType;
+
+    @Column(nullable = false)
+    @JsonProperty(value = "entity_id")
+    private long entityId;
+
+    @Column(nullable = false)
+    private Operation operation;
+
+    // Set for schedule items so clients can skip changes of groups they do not display
+    @JsonProperty(value = "group_id")
+    private Long groupId;
+
+    @Column(nullable = false)
+    @JsonProperty(value = "created_at")
+    private Timestamp createdAt;
+
+    public ChangeLogEntry(EntityType entityType, long entityId, Operation operation, Long groupId) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.groupId = groupId;
+        this.createdAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    public static enum EntityType {
+        GROUP,
+        SUBJECT,
+        SCHEDULE_ITEM,
+    }
+
+    public static enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE,
+    }
+}
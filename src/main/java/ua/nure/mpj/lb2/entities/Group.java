@@ -1,19 +1,34 @@
 package ua.nure.mpj.lb2.entities;
 
 import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
 @Table(name = "groups")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Group.CACHE_REGION)
 @Getter
 @NoArgsConstructor
+@AllArgsConstructor
 public class Group {
+    public static final String CACHE_REGION = "group";
+    public static final String BY_NAME_CACHE_REGION = "group-by-name";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     @Setter
     @Column(nullable = false, unique = true)
     private String name;
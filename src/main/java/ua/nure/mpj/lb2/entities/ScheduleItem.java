@@ -4,18 +4,32 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.sql.Date;
 
 @Entity
-@Table(name = "schedule_items")
+@Table(name = "schedule_items", indexes = {
+        @Index(name = "schedule_items_group_id_id_idx", columnList = "group_id, id"),
+        @Index(name = ScheduleItem.SLOT_INDEX, columnList = "group_id, date, position", unique = true),
+        @Index(name = "schedule_items_subject_id_date_idx", columnList = "subject_id, date"),
+        @Index(name = "schedule_items_subject_id_id_idx", columnList = "subject_id, id"),
+})
 @Getter
 @NoArgsConstructor
 public class ScheduleItem {
+    public static final String SLOT_INDEX = "schedule_items_group_slot_uidx";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "schedule_items_seq")
+    @SequenceGenerator(name = "schedule_items_seq", sequenceName = "schedule_items_seq", allocationSize = 50)
     private long id;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     @Setter
     @ManyToOne
     @JoinColumn(name = "group_id", nullable = false)
@@ -0,0 +1,13 @@
+package ua.nure.mpj.lb2.exceptions;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@AllArgsConstructor
+@Getter
+@Setter
+public class TooManyRequestsException extends RuntimeException {
+    private String message;
+    private long retryAfterSeconds;
+}
@@ -0,0 +1,27 @@
+package ua.nure.mpj.lb2.repositories;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+    // Not read-only: a lagging replica may have applied an entry but not one with a smaller id committed before it
+    @Transactional
+    List<ChangeLogEntry> findAllByIdGreaterThanAndIdLessThanOrderByIdAsc(long after, long before, Limit limit);
+
+    @Transactional
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM ChangeLogEntry e")
+    long findMaxId();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChangeLogEntry e WHERE e.createdAt < :cutoff")
+    int deleteAllByCreatedAtBefore(@Param("cutoff") Timestamp cutoff);
+}
@@ -1,10 +1,72 @@
 package ua.nure.mpj.lb2.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ua.nure.mpj.lb2.entities.Group;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface GroupRepository extends JpaRepository<Group, Long> {
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Group.BY_NAME_CACHE_REGION)
+    })
     Optional<Group> findByNameEquals(String name);
+
+    Slice<Group> findSliceBy(Pageable pageable);
+
+    @Query(value = "SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = CAST('groups' AS regclass)", nativeQuery = true)
+    long approximateCount();
+
+    @Transactional
+    @Query(value = "DELETE FROM groups WHERE id IN (:ids) RETURNING id", nativeQuery = true)
+    List<Long> deleteAllByIdReturning(@Param("ids") Collection<Long> ids);
+
+    // Substring match that needs no extension, names starting with the query first
+    @Query(value = "SELECT * FROM groups WHERE lower(name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY CASE WHEN lower(name) LIKE :prefix ESCAPE '\\' THEN 0 ELSE 1 END, length(name), id LIMIT :limit", nativeQuery = true)
+    List<Group> search(@Param("pattern") String pattern, @Param("prefix") String prefix, @Param("limit") int limit);
+
+    // Asks the primary, the caller's transaction may read from a lagging replica
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("SELECT g.id FROM Group g WHERE g.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // DO NOTHING leaves existing rows untouched, unlike a no-op DO UPDATE that writes a new row version.
+    // Existing rows are read by the second SELECT, which does not see rows inserted by the same statement.
+    // It also misses a row committed by a concurrent insert after this statement started, callers retry those names.
+    @Transactional
+    @Query(value = "WITH inserted AS (INSERT INTO groups (name, version) VALUES (:name, 0) " +
+            "ON CONFLICT (name) DO NOTHING RETURNING id, version, name) " +
+            "SELECT id, version, name, true AS inserted FROM inserted " +
+            "UNION ALL SELECT id, version, name, false AS inserted FROM groups WHERE name = :name", nativeQuery = true)
+    Optional<UpsertView> upsertByName(@Param("name") String name);
+
+    @Transactional
+    @Query(value = "WITH names AS (SELECT DISTINCT t.name FROM unnest(CAST(:names AS text[])) AS t(name)), " +
+            "inserted AS (INSERT INTO groups (name, version) SELECT name, 0 FROM names " +
+            "ON CONFLICT (name) DO NOTHING RETURNING id, version, name) " +
+            "SELECT id, version, name, true AS inserted FROM inserted " +
+            "UNION ALL SELECT g.id, g.version, g.name, false AS inserted FROM groups g JOIN names n ON g.name = n.name", nativeQuery = true)
+    List<UpsertView> upsertAllByName(@Param("names") String[] names);
+
+    interface UpsertView {
+        long getId();
+
+        long getVersion();
+
+        String getName();
+
+        boolean getInserted();
+    }
 }
@@ -1,11 +1,174 @@
 package ua.nure.mpj.lb2.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ua.nure.mpj.lb2.entities.Group;
 import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ScheduleItemRepository extends JpaRepository<ScheduleItem, Long> {
+    @Override
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Optional<ScheduleItem> findById(Long id);
+
+    @Override
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Page<ScheduleItem> findAll(Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
     public Page<ScheduleItem> findAllByGroup(Group group, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Slice<ScheduleItem> findSliceBy(Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Slice<ScheduleItem> findSliceByGroup(Group group, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Page<ScheduleItem> findAllBySubject(Subject subject, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Slice<ScheduleItem> findSliceBySubject(Subject subject, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public List<ScheduleItem> findAllByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public List<ScheduleItem> findAllByGroupAndIdGreaterThanOrderByIdAsc(Group group, long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public List<ScheduleItem> findAllBySubjectAndIdGreaterThanOrderByIdAsc(Subject subject, long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Page<ScheduleItem> findAllByGroupAndDateBetween(Group group, Date from, Date to, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"group", "subject"})
+    public Page<ScheduleItem> findAllBySubjectAndDateBetween(Subject subject, Date from, Date to, Pageable pageable);
+
+    // Fills the timetable cache, so it is not read-only and never served by a lagging replica
+    @Transactional
+    @EntityGraph(attributePaths = {"subject"})
+    public List<ScheduleItem> findAllByGroupIdAndDateBetween(long groupId, Date from, Date to);
+
+    public long countByGroup(Group group);
+
+    public long countBySubject(Subject subject);
+
+    @Query("SELECT s.group.id AS groupId, YEAR(s.date) AS year, MONTH(s.date) AS month, s.type AS type, COUNT(s) AS count FROM ScheduleItem s " +
+            "WHERE s.subject.id = :subjectId " +
+            "AND (CAST(:from AS date) IS NULL OR s.date >= :from) " +
+            "AND (CAST(:to AS date) IS NULL OR s.date <= :to) " +
+            "GROUP BY s.group.id, YEAR(s.date), MONTH(s.date), s.type " +
+            "ORDER BY s.group.id, YEAR(s.date), MONTH(s.date), s.type")
+    public List<StatisticsView> countBySubjectGrouped(@Param("subjectId") long subjectId, @Param("from") Date from, @Param("to") Date to);
+
+    // Keys the cached calendar feed, so it is not read-only like the feed itself
+    @Transactional
+    @Query("SELECT DISTINCT s.subject.id FROM ScheduleItem s WHERE s.group.id = :groupId")
+    public List<Long> findSubjectIdsByGroupId(@Param("groupId") long groupId);
+
+    @Query("SELECT s.group.id FROM ScheduleItem s WHERE s.id = :id")
+    public Optional<Long> findGroupIdById(@Param("id") long id);
+
+    @Query("SELECT s.version AS version, s.group.version AS groupVersion, s.subject.version AS subjectVersion FROM ScheduleItem s WHERE s.id = :id")
+    public Optional<VersionView> findVersionsById(@Param("id") long id);
+
+    public boolean existsByGroupAndDateAndPositionAndIdNot(Group group, Date date, byte position, long id);
+
+    @Query("SELECT s.id AS id, s.group.id AS groupId, s.date AS date, s.position AS position FROM ScheduleItem s " +
+            "WHERE s.group.id IN :groupIds AND s.date IN :dates")
+    public List<SlotView> findSlots(@Param("groupIds") Collection<Long> groupIds, @Param("dates") Collection<Date> dates);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT s.id AS id, s.group.id AS groupId, s.date AS date, s.position AS position FROM ScheduleItem s " +
+            "ORDER BY s.group.id, s.date, s.position, s.id")
+    public Stream<SlotView> streamAllSlots();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT s FROM ScheduleItem s JOIN FETCH s.group JOIN FETCH s.subject " +
+            "WHERE (:groupId IS NULL OR s.group.id = :groupId) " +
+            "AND (CAST(:from AS date) IS NULL OR s.date >= :from) " +
+            "AND (CAST(:to AS date) IS NULL OR s.date <= :to) " +
+            "ORDER BY s.id")
+    public Stream<ScheduleItem> streamAll(@Param("groupId") Long groupId, @Param("from") Date from, @Param("to") Date to);
+
+    public boolean existsByGroupIdIn(Collection<Long> groupIds);
+
+    public boolean existsBySubjectIdIn(Collection<Long> subjectIds);
+
+    // The DELETE ... RETURNING statements remove a whole set in one round trip and report what was removed
+    @Transactional
+    @Query(value = "DELETE FROM schedule_items WHERE id IN (:ids) RETURNING id, group_id AS \"groupId\"", nativeQuery = true)
+    public List<DeletedView> deleteAllByIdReturning(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Query(value = "DELETE FROM schedule_items WHERE group_id IN (:groupIds) RETURNING id, group_id AS \"groupId\"", nativeQuery = true)
+    public List<DeletedView> deleteAllByGroupIdReturning(@Param("groupIds") Collection<Long> groupIds);
+
+    @Transactional
+    @Query(value = "DELETE FROM schedule_items WHERE subject_id IN (:subjectIds) RETURNING id, group_id AS \"groupId\"", nativeQuery = true)
+    public List<DeletedView> deleteAllBySubjectIdReturning(@Param("subjectIds") Collection<Long> subjectIds);
+
+    @Transactional
+    @Query(value = "DELETE FROM schedule_items WHERE date BETWEEN :from AND :to RETURNING id, group_id AS \"groupId\"", nativeQuery = true)
+    public List<DeletedView> deleteAllByDateBetweenReturning(@Param("from") Date from, @Param("to") Date to);
+
+    @Transactional
+    @Query(value = "DELETE FROM schedule_items WHERE group_id = :groupId AND date BETWEEN :from AND :to RETURNING id, group_id AS \"groupId\"", nativeQuery = true)
+    public List<DeletedView> deleteAllByGroupIdAndDateBetweenReturning(@Param("groupId") long groupId, @Param("from") Date from, @Param("to") Date to);
+
+    @Query(value = "SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = CAST('schedule_items' AS regclass)", nativeQuery = true)
+    public long approximateCount();
+
+    public interface SlotView {
+        long getId();
+
+        long getGroupId();
+
+        Date getDate();
+
+        byte getPosition();
+    }
+
+    public interface StatisticsView {
+        long getGroupId();
+
+        int getYear();
+
+        int getMonth();
+
+        ScheduleItem.Type getType();
+
+        long getCount();
+    }
+
+    public interface DeletedView {
+        long getId();
+
+        long getGroupId();
+    }
+
+    public interface VersionView {
+        long getVersion();
+
+        long getGroupVersion();
+
+        long getSubjectVersion();
+    }
 }
@@ -1,7 +1,34 @@
 package ua.nure.mpj.lb2.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ua.nure.mpj.lb2.entities.Subject;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface SubjectRepository extends JpaRepository<Subject, Long> {
+    Slice<Subject> findSliceBy(Pageable pageable);
+
+    @Query(value = "SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = CAST('subjects' AS regclass)", nativeQuery = true)
+    long approximateCount();
+
+    // Substring match that needs no extension, subjects whose name or short name starts with the query first
+    @Query(value = "SELECT * FROM subjects WHERE lower(name) LIKE :pattern ESCAPE '\\' OR lower(short_name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY CASE WHEN lower(name) LIKE :prefix ESCAPE '\\' OR lower(short_name) LIKE :prefix ESCAPE '\\' THEN 0 ELSE 1 END, length(name), id LIMIT :limit", nativeQuery = true)
+    List<Subject> search(@Param("pattern") String pattern, @Param("prefix") String prefix, @Param("limit") int limit);
+
+    // Asks the primary, the caller's transaction may read from a lagging replica
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("SELECT s.id FROM Subject s WHERE s.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Query(value = "DELETE FROM subjects WHERE id IN (:ids) RETURNING id", nativeQuery = true)
+    List<Long> deleteAllByIdReturning(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,21 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkDeleteResponse {
+    @JsonProperty(value = "deleted", required = true)
+    private int deleted;
+
+    @JsonProperty(value = "schedule_items_deleted")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer scheduleItemsDeleted;
+}
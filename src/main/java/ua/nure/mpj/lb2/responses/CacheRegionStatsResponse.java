@@ -0,0 +1,28 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheRegionStatsResponse {
+    private String region;
+
+    private String type;
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long puts;
+
+    @JsonProperty(value = "hit_rate")
+    private double hitRate;
+}
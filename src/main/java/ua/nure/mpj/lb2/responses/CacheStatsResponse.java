@@ -0,0 +1,26 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStatsResponse {
+    private String name;
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    @JsonProperty(value = "hit_rate")
+    private double hitRate;
+
+    private long evictions;
+}
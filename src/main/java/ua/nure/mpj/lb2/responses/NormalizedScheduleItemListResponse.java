@@ -0,0 +1,86 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedule item page where every group and subject is sent once and items refer to them by id.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class NormalizedScheduleItemListResponse {
+    @JsonProperty(value = "items", required = true)
+    private List<Item> items;
+
+    @JsonProperty(value = "groups", required = true)
+    private Map<Long, Group> groups;
+
+    @JsonProperty(value = "subjects", required = true)
+    private Map<Long, Subject> subjects;
+
+    @JsonProperty(value = "count")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long count;
+
+    @JsonProperty(value = "next_cursor")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    @JsonProperty(value = "has_more")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean hasMore;
+
+    public static NormalizedScheduleItemListResponse of(PaginatedListResponse<ScheduleItem> response) {
+        List<Item> items = new ArrayList<>(response.getItems().size());
+        Map<Long, Group> groups = new LinkedHashMap<>();
+        Map<Long, Subject> subjects = new LinkedHashMap<>();
+        for(ScheduleItem item : response.getItems()) {
+            groups.putIfAbsent(item.getGroup().getId(), item.getGroup());
+            subjects.putIfAbsent(item.getSubject().getId(), item.getSubject());
+            items.add(new Item(item.getId(), item.getVersion(), item.getGroup().getId(), item.getSubject().getId(), item.getDate(), item.getPosition(), item.getType()));
+        }
+        return new NormalizedScheduleItemListResponse(items, groups, subjects, response.getCount(), response.getNextCursor(), response.getHasMore());
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        @JsonProperty(value = "id")
+        private long id;
+
+        @JsonProperty(value = "version")
+        private long version;
+
+        @JsonProperty(value = "group_id")
+        private long groupId;
+
+        @JsonProperty(value = "subject_id")
+        private long subjectId;
+
+        @JsonProperty(value = "date")
+        private Date date;
+
+        @JsonProperty(value = "position")
+        private byte position;
+
+        @JsonProperty(value = "type")
+        private ScheduleItem.Type type;
+    }
+}
@@ -1,5 +1,6 @@
 package ua.nure.mpj.lb2.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -16,6 +17,19 @@ public class PaginatedListResponse<T> {
     @JsonProperty(value = "items", required = true)
     private List<T> items;
 
-    @JsonProperty(value = "count", required = true)
-    private long count;
+    @JsonProperty(value = "count")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long count;
+
+    @JsonProperty(value = "next_cursor")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    @JsonProperty(value = "has_more")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean hasMore;
+
+    public PaginatedListResponse(List<T> items, long count) {
+        this(items, count, null, null);
+    }
 }
@@ -0,0 +1,31 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScheduleItemImportResponse {
+    @JsonProperty(value = "created", required = true)
+    private long created;
+
+    @JsonProperty(value = "errors", required = true)
+    private List<RowError> errors;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowError {
+        private long index;
+
+        private String message;
+    }
+}
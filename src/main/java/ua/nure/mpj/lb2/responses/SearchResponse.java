@@ -0,0 +1,26 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.Subject;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchResponse {
+    @JsonProperty(value = "groups")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Group> groups;
+
+    @JsonProperty(value = "subjects")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Subject> subjects;
+}
@@ -0,0 +1,28 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.sql.Date;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SlotConflictResponse {
+    @JsonProperty(value = "group_id", required = true)
+    private long groupId;
+
+    @JsonProperty(required = true)
+    private Date date;
+
+    @JsonProperty(required = true)
+    private byte position;
+
+    @JsonProperty(value = "item_ids", required = true)
+    private List<Long> itemIds;
+}
@@ -0,0 +1,55 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SubjectStatisticsResponse {
+    @JsonProperty(value = "subject_id")
+    private long subjectId;
+
+    @JsonProperty(value = "from")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Date from;
+
+    @JsonProperty(value = "to")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Date to;
+
+    @JsonProperty(value = "totals")
+    private Map<ScheduleItem.Type, Long> totals;
+
+    @JsonProperty(value = "rows")
+    private List<Row> rows;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Row {
+        @JsonProperty(value = "group_id")
+        private long groupId;
+
+        // yyyy-MM
+        @JsonProperty(value = "month")
+        private String month;
+
+        @JsonProperty(value = "type")
+        private ScheduleItem.Type type;
+
+        @JsonProperty(value = "count")
+        private long count;
+    }
+}
@@ -0,0 +1,45 @@
+package ua.nure.mpj.lb2.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+
+import java.sql.Date;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WeekTimetableResponse {
+    @JsonProperty(value = "group_id", required = true)
+    private long groupId;
+
+    @JsonProperty(value = "week_start", required = true)
+    private Date weekStart;
+
+    // Seven lists, Monday first, each sorted by position
+    @JsonProperty(value = "days", required = true)
+    private List<List<Cell>> days;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Cell {
+        @JsonProperty(value = "item_id")
+        private long itemId;
+
+        private byte position;
+
+        @JsonProperty(value = "subject_id")
+        private long subjectId;
+
+        private String subject;
+
+        private ScheduleItem.Type type;
+    }
+}
@@ -0,0 +1,87 @@
+package ua.nure.mpj.lb2.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.utils.TeeOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Serves group iCalendar feeds. A feed shows the group's name, its schedule items and the names of their subjects,
+ * so its ETag is made of the group's version, the group's schedule counter and the counters of the subjects in use;
+ * renaming any other group or subject leaves it as it is. Rendered feeds are kept per group together with that tag
+ * and the subjects it was computed from, and are reused until it changes, so calendar clients polling an unchanged
+ * group never reach the schedule.
+ */
+@Service
+@Timed("service.calls")
+public class CalendarService {
+    private final ScheduleItemExportService scheduleItemExportService;
+    private final ChangeCounterService changeCounterService;
+    private final Cache<Long, RenderedFeed> feeds;
+
+    @Autowired
+    public CalendarService(
+            ScheduleItemExportService scheduleItemExportService,
+            ChangeCounterService changeCounterService,
+            @Value("${app.calendar.cache-size:500}") long cacheSize
+    ) {
+        this.scheduleItemExportService = scheduleItemExportService;
+        this.changeCounterService = changeCounterService;
+        this.feeds = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    public String getETag(Group group) {
+        RenderedFeed cached = feeds.getIfPresent(group.getId());
+        if(cached != null) {
+            // The subjects of items added since the feed was rendered change the schedule counter as well
+            String etag = computeETag(group, changeCounterService.groupScheduleItemChanges(group.getId()), cached.subjectIds());
+            if(etag.equals(cached.etag())) {
+                return etag;
+            }
+        }
+        return computeETag(group).etag();
+    }
+
+    public void writeGroupCalendar(Group group, OutputStream output) throws IOException {
+        // Taken before rendering, a write committed meanwhile changes the tag and the next request renders again
+        Key key = computeETag(group);
+
+        RenderedFeed cached = feeds.getIfPresent(group.getId());
+        if(cached != null && cached.etag().equals(key.etag())) {
+            output.write(cached.content());
+            return;
+        }
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        scheduleItemExportService.exportICalendar(group, new TeeOutputStream(output, copy));
+        feeds.put(group.getId(), new RenderedFeed(key.etag(), key.subjectIds(), copy.toByteArray()));
+    }
+
+    // The schedule counter is read before the subjects, see ChangeCounterService.groupCalendarETag
+    private Key computeETag(Group group) {
+        long scheduleItemChanges = changeCounterService.groupScheduleItemChanges(group.getId());
+        List<Long> subjectIds = scheduleItemExportService.calendarSubjectIds(group);
+        return new Key(computeETag(group, scheduleItemChanges, subjectIds), subjectIds);
+    }
+
+    private String computeETag(Group group, long scheduleItemChanges, List<Long> subjectIds) {
+        return changeCounterService.groupCalendarETag(group.getVersion(), scheduleItemChanges, subjectIds);
+    }
+
+    private record Key(String etag, List<Long> subjectIds) {
+    }
+
+    private record RenderedFeed(String etag, List<Long> subjectIds, byte[] content) {
+    }
+}
@@ -0,0 +1,104 @@
+package ua.nure.mpj.lb2.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ua.nure.mpj.lb2.utils.TransactionCallbacks;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory change counters used to build weak ETags for list endpoints without querying the database.
+ * Counters are bumped once the writing transaction commits and start from zero on every run, so the startup
+ * time is part of every tag to keep tags from a previous run from matching.
+ * <p>
+ * The counters only see writes made through this instance. With several instances behind a load balancer
+ * a write on one of them leaves the tags of the others unchanged, so these tags are only valid for a single
+ * instance deployment.
+ * <p>
+ * List endpoints read from the replica when one is configured, and a lagging replica would get the old rows
+ * cached under a newer tag, so {@link #listETagsEnabled()} is false then. Caches filled from the primary keep using the tags.
+ */
+@Service
+public class ChangeCounterService {
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong subjects = new AtomicLong();
+    private final AtomicLong scheduleItems = new AtomicLong();
+    private final Map<Long, AtomicLong> groupScheduleItems = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> subjectChanges = new ConcurrentHashMap<>();
+    private final boolean listETagsEnabled;
+
+    @Autowired
+    public ChangeCounterService(@Value("${app.datasource.replica.url:}") String replicaUrl) {
+        this.listETagsEnabled = replicaUrl.isEmpty();
+    }
+
+    public boolean listETagsEnabled() {
+        return listETagsEnabled;
+    }
+
+    // A bump made before the commit would let a concurrent read cache the old rows under the new tag
+    public void groupsChanged() {
+        TransactionCallbacks.afterCommit(groups::incrementAndGet);
+    }
+
+    public void subjectsChanged(long... subjectIds) {
+        TransactionCallbacks.afterCommit(() -> {
+            subjects.incrementAndGet();
+            for(long subjectId : subjectIds) {
+                subjectChanges.computeIfAbsent(subjectId, k -> new AtomicLong()).incrementAndGet();
+            }
+        });
+    }
+
+    public void scheduleItemsChanged(long... groupIds) {
+        TransactionCallbacks.afterCommit(() -> {
+            scheduleItems.incrementAndGet();
+            for(long groupId : groupIds) {
+                groupScheduleItems.computeIfAbsent(groupId, k -> new AtomicLong()).incrementAndGet();
+            }
+        });
+    }
+
+    public String groupsETag() {
+        return String.format("W/\"%d-%d\"", epoch, groups.get());
+    }
+
+    public String subjectsETag() {
+        return String.format("W/\"%d-%d\"", epoch, subjects.get());
+    }
+
+    // Schedule items embed their group and subject, so renames have to change these tags as well
+    public String scheduleItemsETag() {
+        return String.format("W/\"%d-%d-%d-%d\"", epoch, scheduleItems.get(), groups.get(), subjects.get());
+    }
+
+    public String groupScheduleItemsETag(long groupId) {
+        return String.format("W/\"%d-%d-%d-%d\"", epoch, groupScheduleItemChanges(groupId), groups.get(), subjects.get());
+    }
+
+    public long groupScheduleItemChanges(long groupId) {
+        AtomicLong counter = groupScheduleItems.get(groupId);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Tag of a group's calendar, which shows the group's name, its schedule items and the names of their subjects.
+     * scheduleItemChanges has to be taken before subjectIds are read: the subjects of items added meanwhile
+     * are missing from subjectIds, but the items change the group's counter. Counters only grow, so their sum
+     * changes with any of them.
+     */
+    public String groupCalendarETag(long groupVersion, long scheduleItemChanges, Collection<Long> subjectIds) {
+        long subjectsSum = 0;
+        for(long subjectId : subjectIds) {
+            AtomicLong counter = subjectChanges.get(subjectId);
+            subjectsSum += counter == null ? 0 : counter.get();
+        }
+        return String.format("W/\"%d-%d-%d-%d\"", epoch, groupVersion, scheduleItemChanges, subjectsSum);
+    }
+}
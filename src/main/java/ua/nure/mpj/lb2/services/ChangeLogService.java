@@ -0,0 +1,160 @@
+package ua.nure.mpj.lb2.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
+import ua.nure.mpj.lb2.repositories.ChangeLogRepository;
+import ua.nure.mpj.lb2.utils.TransactionCallbacks;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only log of writes made through the services, read incrementally by id.
+ * Entries are written in the transaction of the write they describe, with ids from change_log_seq. Taking an id
+ * locks nothing, so concurrent transactions may commit out of id order. Readers therefore only get entries below
+ * the lowest id a transaction still in progress may hold, and a reader that has seen an id never finds a smaller
+ * one committed later. The ids in progress are tracked in memory, so this holds for a single instance only.
+ * Waiting long-poll requests are kept in memory and completed off the writing thread once entries newer than
+ * theirs are committed.
+ * Entries older than app.change-log.retention are deleted, clients further behind have to reload everything.
+ */
+@Service
+@Lazy(false)
+@DatabaseBound
+public class ChangeLogService {
+    private final ChangeLogRepository changeLogRepository;
+    private final Duration retention;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    // Highest id handed out so far, and for each transaction still writing the lowest id it may hold
+    private final AtomicLong lastId = new AtomicLong();
+    private final Queue<Long> pendingIds = new ConcurrentLinkedQueue<>();
+
+    // A single thread, notifications requested while one is queued are served by it
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-log-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean notificationQueued = new AtomicBoolean();
+
+    @Autowired
+    public ChangeLogService(ChangeLogRepository changeLogRepository, @Value("${app.change-log.retention:7d}") Duration retention) {
+        this.changeLogRepository = changeLogRepository;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        lastId.accumulateAndGet(changeLogRepository.findMaxId(), Math::max);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+
+    @Transactional
+    public void record(ChangeLogEntry.EntityType entityType, long entityId, ChangeLogEntry.Operation operation, Long groupId) {
+        recordAll(List.of(new ChangeLogEntry(entityType, entityId, operation, groupId)));
+    }
+
+    @Transactional
+    public void recordAll(Collection<ChangeLogEntry> entries) {
+        if(entries.isEmpty()) {
+            return;
+        }
+
+        // Registered before the ids are taken, every id taken afterwards is above it
+        Long pending = lastId.get() + 1;
+        pendingIds.add(pending);
+        // Also after a rollback, entries committed meanwhile may have been held back by this transaction
+        TransactionCallbacks.afterCompletion(() -> {
+            pendingIds.remove(pending);
+            notifyWaiters();
+        });
+
+        List<ChangeLogEntry> saved = changeLogRepository.saveAll(entries);
+        lastId.accumulateAndGet(saved.stream().mapToLong(ChangeLogEntry::getId).max().orElse(0), Math::max);
+    }
+
+    public List<ChangeLogEntry> list(long since, int limit) {
+        // Taken before the query: ids handed out later are above lastId, ids held by running transactions
+        // are at or above their pending id
+        long before = lastId.get() + 1;
+        for(long pending : pendingIds) {
+            before = Math.min(before, pending);
+        }
+        return changeLogRepository.findAllByIdGreaterThanAndIdLessThanOrderByIdAsc(since, before, Limit.of(limit));
+    }
+
+    public DeferredResult<List<ChangeLogEntry>> poll(long since, int limit, long timeoutMillis) {
+        DeferredResult<List<ChangeLogEntry>> result = new DeferredResult<>(timeoutMillis, List.of());
+        List<ChangeLogEntry> entries = list(since, limit);
+        if(!entries.isEmpty() || timeoutMillis <= 0) {
+            result.setResult(entries);
+            return result;
+        }
+
+        Waiter waiter = new Waiter(since, limit, result);
+        result.onCompletion(() -> waiters.remove(waiter));
+        waiters.add(waiter);
+
+        // An entry committed between the query above and registering the waiter would not wake it up
+        entries = list(since, limit);
+        if(!entries.isEmpty()) {
+            result.setResult(entries);
+        }
+        return result;
+    }
+
+    @Scheduled(initialDelayString = "${app.change-log.cleanup-interval:PT1H}", fixedDelayString = "${app.change-log.cleanup-interval:PT1H}")
+    @Transactional
+    public void deleteExpired() {
+        changeLogRepository.deleteAllByCreatedAtBefore(new Timestamp(System.currentTimeMillis() - retention.toMillis()));
+    }
+
+    private void notifyWaiters() {
+        if(!waiters.isEmpty() && notificationQueued.compareAndSet(false, true)) {
+            notifier.execute(() -> {
+                // Cleared first, a commit arriving while the waiters are served queues another round
+                notificationQueued.set(false);
+                serveWaiters();
+            });
+        }
+    }
+
+    private void serveWaiters() {
+        // Waiters mostly follow the head of the log and share a position, so there is one query per position
+        Map<Long, List<Waiter>> positions = waiters.stream().collect(Collectors.groupingBy(Waiter::since));
+        for(Map.Entry<Long, List<Waiter>> position : positions.entrySet()) {
+            int limit = position.getValue().stream().mapToInt(Waiter::limit).max().orElse(1);
+            List<ChangeLogEntry> entries = list(position.getKey(), limit);
+            if(entries.isEmpty()) {
+                continue;
+            }
+            for(Waiter waiter : position.getValue()) {
+                waiter.result().setResult(entries.subList(0, Math.min(waiter.limit(), entries.size())));
+            }
+        }
+    }
+
+    private record Waiter(long since, int limit, DeferredResult<List<ChangeLogEntry>> result) {
+    }
+}
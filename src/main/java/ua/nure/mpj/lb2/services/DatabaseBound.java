@@ -0,0 +1,15 @@
+package ua.nure.mpj.lb2.services;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks services whose calls need a database connection, they are admitted through
+ * {@link ua.nure.mpj.lb2.config.ConcurrencyLimitAspect}.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DatabaseBound {
+}
@@ -0,0 +1,11 @@
+package ua.nure.mpj.lb2.services;
+
+/**
+ * What happens to schedule items when the group or subject they reference is deleted.
+ */
+public enum DeletePolicy {
+    /** Refuse to delete while schedule items still reference the entity. */
+    RESTRICT,
+    /** Delete the referencing schedule items in the same transaction. */
+    CASCADE,
+}
@@ -1,42 +1,195 @@
 package ua.nure.mpj.lb2.services;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
 import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.exceptions.DependentEntitiesException;
 import ua.nure.mpj.lb2.repositories.GroupRepository;
+import ua.nure.mpj.lb2.responses.BulkDeleteResponse;
 
-import java.util.Optional;
+import java.util.*;
 
 @Service
+@DatabaseBound
+@Timed("service.calls")
 public class GroupService {
+    // A name inserted concurrently is missing from the upsert result and read again by the next attempt
+    private static final int UPSERT_ATTEMPTS = 3;
+
     private final Sort SORT_BY_ID_ASC = Sort.by(Sort.Direction.ASC, "id");
 
     private final GroupRepository groupRepository;
+    private final TimetableService timetableService;
+    private final ChangeCounterService changeCounterService;
+    private final ChangeLogService changeLogService;
+    private final ScheduleItemService scheduleItemService;
+    private final DeletePolicy deletePolicy;
+    private final SearchService searchService;
+    private final SecondLevelCacheService secondLevelCacheService;
 
     @Autowired
-    public GroupService(GroupRepository groupRepository) {
+    public GroupService(
+            GroupRepository groupRepository,
+            TimetableService timetableService,
+            ChangeCounterService changeCounterService,
+            ChangeLogService changeLogService,
+            ScheduleItemService scheduleItemService,
+            @Value("${app.delete-policy:RESTRICT}") DeletePolicy deletePolicy,
+            SearchService searchService,
+            SecondLevelCacheService secondLevelCacheService
+    ) {
         this.groupRepository = groupRepository;
+        this.timetableService = timetableService;
+        this.changeCounterService = changeCounterService;
+        this.changeLogService = changeLogService;
+        this.scheduleItemService = scheduleItemService;
+        this.deletePolicy = deletePolicy;
+        this.searchService = searchService;
+        this.secondLevelCacheService = secondLevelCacheService;
     }
 
+    @Transactional(readOnly = true)
     public Page<Group> list(int page, int pageSize) {
         return groupRepository.findAll(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
     }
 
+    @Transactional(readOnly = true)
+    public Slice<Group> listSlice(int page, int pageSize) {
+        return groupRepository.findSliceBy(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public long approximateCount() {
+        long count = groupRepository.approximateCount();
+        return count < 0 ? groupRepository.count() : count;
+    }
+
+    // Served from the Hibernate second-level cache when it is enabled
+    @Transactional(readOnly = true)
     public Optional<Group> get(long id) {
         return groupRepository.findById(id);
     }
 
+    @Transactional(readOnly = true)
+    public List<Group> getAll(Collection<Long> ids) {
+        return groupRepository.findAllById(ids);
+    }
+
+    @Transactional
     public Group save(Group group) {
-        return groupRepository.save(group);
+        boolean created = group.getId() == 0;
+        Group result = groupRepository.saveAndFlush(group);
+        changeCounterService.groupsChanged();
+        changeLogService.record(ChangeLogEntry.EntityType.GROUP, result.getId(), created ? ChangeLogEntry.Operation.CREATE : ChangeLogEntry.Operation.UPDATE, null);
+        searchService.onGroupSaved(result);
+        return result;
     }
 
+    // A single INSERT ... ON CONFLICT instead of a lookup followed by an insert that can race with another create
+    @Transactional
+    public Group upsert(String name) {
+        for(int attempt = 1; ; attempt++) {
+            Optional<GroupRepository.UpsertView> upserted = groupRepository.upsertByName(name);
+            if(upserted.isPresent()) {
+                return afterUpsert(List.of(upserted.get())).get(0);
+            }
+            if(attempt == UPSERT_ATTEMPTS) {
+                throw new OptimisticLockingFailureException(String.format("Group \"%s\" kept changing concurrently", name));
+            }
+        }
+    }
+
+    @Transactional
+    public List<Group> upsertAll(Collection<String> names) {
+        List<GroupRepository.UpsertView> upserted = new ArrayList<>();
+        Set<String> remaining = new LinkedHashSet<>(names);
+        for(int attempt = 1; !remaining.isEmpty(); attempt++) {
+            if(attempt > UPSERT_ATTEMPTS) {
+                throw new OptimisticLockingFailureException("Some of the groups kept changing concurrently");
+            }
+            for(GroupRepository.UpsertView group : groupRepository.upsertAllByName(remaining.toArray(new String[0]))) {
+                upserted.add(group);
+                remaining.remove(group.getName());
+            }
+        }
+        return afterUpsert(upserted);
+    }
+
+    private List<Group> afterUpsert(List<GroupRepository.UpsertView> upserted) {
+        List<ChangeLogEntry> created = upserted.stream()
+                .filter(GroupRepository.UpsertView::getInserted)
+                .map(group -> new ChangeLogEntry(ChangeLogEntry.EntityType.GROUP, group.getId(), ChangeLogEntry.Operation.CREATE, null))
+                .toList();
+        if(!created.isEmpty()) {
+            changeCounterService.groupsChanged();
+            changeLogService.recordAll(created);
+            // A cached lookup may still say that the name does not exist
+            secondLevelCacheService.evictQueryRegion(Group.BY_NAME_CACHE_REGION);
+        }
+        List<Group> result = new ArrayList<>(upserted.size());
+        for(GroupRepository.UpsertView group : upserted) {
+            Group entity = new Group(group.getId(), group.getVersion(), group.getName());
+            if(group.getInserted()) {
+                searchService.onGroupSaved(entity);
+            }
+            result.add(entity);
+        }
+        return result;
+    }
+
+    @Transactional
     public void deleteById(long id) {
-        groupRepository.deleteById(id);
+        delete(List.of(id));
+    }
+
+    @Transactional
+    public BulkDeleteResponse deleteAllById(Collection<Long> ids) {
+        return delete(ids);
+    }
+
+    // Schedule items are removed with one statement per call rather than loaded and deleted one by one
+    private BulkDeleteResponse delete(Collection<Long> ids) {
+        if(ids.isEmpty()) {
+            return new BulkDeleteResponse(0, 0);
+        }
+
+        int scheduleItemsDeleted = 0;
+        if(deletePolicy == DeletePolicy.CASCADE) {
+            scheduleItemsDeleted = scheduleItemService.deleteAllByGroupIds(ids);
+        } else if(scheduleItemService.existsInGroups(ids)) {
+            throw new DependentEntitiesException("Some of the groups still have schedule items");
+        }
+
+        List<Long> deleted;
+        try {
+            deleted = groupRepository.deleteAllByIdReturning(ids);
+        } catch (DataIntegrityViolationException e) {
+            // A schedule item was added concurrently, after the check or the cascade above
+            throw new DependentEntitiesException("Some of the groups still have schedule items");
+        }
+        searchService.onGroupsDeleted(deleted);
+        secondLevelCacheService.evict(Group.class, deleted);
+        secondLevelCacheService.evictQueryRegion(Group.BY_NAME_CACHE_REGION);
+        deleted.forEach(timetableService::invalidateGroup);
+        changeCounterService.groupsChanged();
+        changeLogService.recordAll(deleted.stream()
+                .map(id -> new ChangeLogEntry(ChangeLogEntry.EntityType.GROUP, id, ChangeLogEntry.Operation.DELETE, null))
+                .toList());
+        return new BulkDeleteResponse(deleted.size(), scheduleItemsDeleted);
     }
 
+    // Served from the group-by-name query cache region when the second-level cache is enabled
+    @Transactional(readOnly = true)
     public Optional<Group> getByName(String name) {
         return groupRepository.findByNameEquals(name);
     }
@@ -0,0 +1,193 @@
+package ua.nure.mpj.lb2.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.repositories.ScheduleItemRepository;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+@Service
+@DatabaseBound
+@Timed("service.calls")
+public class ScheduleItemExportService {
+    private static final String CSV_HEADER = "id,group_id,group_name,subject_id,subject_name,subject_short_name,date,position,type";
+    private static final DateTimeFormatter ICS_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final ScheduleItemRepository scheduleItemRepository;
+    private final ObjectMapper objectMapper;
+    private final List<BellSlot> bellSchedule;
+    private final ZoneId timeZone;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public ScheduleItemExportService(
+            ScheduleItemRepository scheduleItemRepository,
+            ObjectMapper objectMapper,
+            @Value("${app.calendar.bell-schedule:07:45-09:20,09:30-11:05,11:15-12:50,13:10-14:45,14:55-16:30,16:40-18:15,18:25-20:00,20:10-21:45}") String bellSchedule,
+            @Value("${app.calendar.time-zone:Europe/Kyiv}") String timeZone
+    ) {
+        this.scheduleItemRepository = scheduleItemRepository;
+        this.objectMapper = objectMapper;
+        this.bellSchedule = Arrays.stream(bellSchedule.split(","))
+                .map(String::trim)
+                .map(BellSlot::parse)
+                .toList();
+        this.timeZone = ZoneId.of(timeZone);
+    }
+
+    // Postgres only honors the fetch size inside a transaction, otherwise the whole result set is buffered
+    @Transactional(readOnly = true)
+    public void exportNdjson(Long groupId, Date from, Date to, OutputStream output) throws IOException {
+        try (Stream<ScheduleItem> items = scheduleItemRepository.streamAll(groupId, from, to);
+             SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(output)) {
+            Iterator<ScheduleItem> it = items.iterator();
+            while (it.hasNext()) {
+                ScheduleItem item = it.next();
+                writer.write(item);
+                entityManager.detach(item);
+            }
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportCsv(Long groupId, Date from, Date to, OutputStream output) throws IOException {
+        try (Stream<ScheduleItem> items = scheduleItemRepository.streamAll(groupId, from, to)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+
+            Iterator<ScheduleItem> it = items.iterator();
+            while (it.hasNext()) {
+                ScheduleItem item = it.next();
+                writer.write(String.join(",",
+                        String.valueOf(item.getId()),
+                        String.valueOf(item.getGroup().getId()),
+                        escapeCsv(item.getGroup().getName()),
+                        String.valueOf(item.getSubject().getId()),
+                        escapeCsv(item.getSubject().getName()),
+                        escapeCsv(item.getSubject().getShortName()),
+                        item.getDate().toString(),
+                        String.valueOf(item.getPosition()),
+                        item.getType().name()
+                ));
+                writer.write('\n');
+                entityManager.detach(item);
+            }
+
+            writer.flush();
+        }
+    }
+
+    public List<Long> calendarSubjectIds(Group group) {
+        return scheduleItemRepository.findSubjectIdsByGroupId(group.getId());
+    }
+
+    // Positions are 1-based indexes into the bell schedule, items outside of it become all-day events.
+    // The feed is cached by CalendarService, so it is read in a read-write transaction, i.e. from the primary.
+    @Transactional
+    public void exportICalendar(Group group, OutputStream output) throws IOException {
+        try (Stream<ScheduleItem> items = scheduleItemRepository.streamAll(group.getId(), null, null)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            String stamp = ICS_TIMESTAMP.format(Instant.now());
+            writeICalendarLine(writer, "BEGIN:VCALENDAR");
+            writeICalendarLine(writer, "VERSION:2.0");
+            writeICalendarLine(writer, "PRODID:-//mpj-lb2//schedule//EN");
+            writeICalendarLine(writer, "CALSCALE:GREGORIAN");
+            writeICalendarLine(writer, "METHOD:PUBLISH");
+            writeICalendarLine(writer, "X-WR-CALNAME:" + escapeICalendar(group.getName()));
+
+            Iterator<ScheduleItem> it = items.iterator();
+            while (it.hasNext()) {
+                ScheduleItem item = it.next();
+                LocalDate date = item.getDate().toLocalDate();
+                writeICalendarLine(writer, "BEGIN:VEVENT");
+                writeICalendarLine(writer, "UID:schedule-item-" + item.getId() + "@mpj-lb2");
+                writeICalendarLine(writer, "DTSTAMP:" + stamp);
+                if(item.getPosition() >= 1 && item.getPosition() <= bellSchedule.size()) {
+                    BellSlot slot = bellSchedule.get(item.getPosition() - 1);
+                    writeICalendarLine(writer, "DTSTART:" + ICS_TIMESTAMP.format(date.atTime(slot.start()).atZone(timeZone)));
+                    writeICalendarLine(writer, "DTEND:" + ICS_TIMESTAMP.format(date.atTime(slot.end()).atZone(timeZone)));
+                } else {
+                    writeICalendarLine(writer, "DTSTART;VALUE=DATE:" + date.format(DateTimeFormatter.BASIC_ISO_DATE));
+                    writeICalendarLine(writer, "DTEND;VALUE=DATE:" + date.plusDays(1).format(DateTimeFormatter.BASIC_ISO_DATE));
+                }
+                writeICalendarLine(writer, "SUMMARY:" + escapeICalendar(item.getSubject().getName() + " (" + item.getType().name().toLowerCase(Locale.ROOT) + ")"));
+                writeICalendarLine(writer, "DESCRIPTION:" + escapeICalendar(group.getName() + ", #" + item.getPosition()));
+                writeICalendarLine(writer, "END:VEVENT");
+                entityManager.detach(item);
+            }
+
+            writeICalendarLine(writer, "END:VCALENDAR");
+            writer.flush();
+        }
+    }
+
+    // RFC 5545 limits lines to 75 octets, longer ones continue on the next line after a space
+    private static void writeICalendarLine(Writer writer, String line) throws IOException {
+        int octets = 0;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            boolean pair = Character.isHighSurrogate(c) && i + 1 < line.length();
+            int size = pair ? 4 : c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            if(octets + size > 75) {
+                writer.write("\r\n ");
+                octets = 1;
+            }
+            writer.write(c);
+            if(pair) {
+                writer.write(line.charAt(++i));
+            }
+            octets += size;
+        }
+        writer.write("\r\n");
+    }
+
+    private static String escapeICalendar(String value) {
+        return value.replace("\\", "\\\\")
+                .replace(";", "\\;")
+                .replace(",", "\\,")
+                .replace("\n", "\\n");
+    }
+
+    private static String escapeCsv(String value) {
+        if(value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private record BellSlot(LocalTime start, LocalTime end) {
+        // "08:00-09:35"
+        static BellSlot parse(String value) {
+            String[] parts = value.split("-");
+            if(parts.length != 2) {
+                throw new IllegalArgumentException(String.format("Invalid bell schedule entry \"%s\"", value));
+            }
+            return new BellSlot(LocalTime.parse(parts[0].trim()), LocalTime.parse(parts[1].trim()));
+        }
+    }
+}
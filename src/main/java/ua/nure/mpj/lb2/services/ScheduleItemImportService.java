@@ -0,0 +1,156 @@
+package ua.nure.mpj.lb2.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.exceptions.SlotConflictException;
+import ua.nure.mpj.lb2.requests.ScheduleItemCreateRequest;
+import ua.nure.mpj.lb2.responses.ScheduleItemImportResponse;
+import ua.nure.mpj.lb2.utils.SlotBitmap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Date;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@DatabaseBound
+@Timed("service.calls")
+public class ScheduleItemImportService {
+    private static final int BATCH_SIZE = 500;
+
+    private final GroupService groupService;
+    private final SubjectService subjectService;
+    private final ScheduleItemService scheduleItemService;
+    private final ObjectReader requestReader;
+
+    @Autowired
+    public ScheduleItemImportService(GroupService groupService, SubjectService subjectService, ScheduleItemService scheduleItemService, ObjectMapper objectMapper) {
+        this.groupService = groupService;
+        this.subjectService = subjectService;
+        this.scheduleItemService = scheduleItemService;
+        this.requestReader = objectMapper.readerFor(ScheduleItemCreateRequest.class);
+    }
+
+    /**
+     * Reads either a JSON array or newline-delimited JSON objects from the stream and inserts them in batches.
+     * Rows are committed batch by batch, so rows preceding a malformed one stay imported.
+     */
+    public ScheduleItemImportResponse importItems(InputStream input) throws IOException {
+        ScheduleItemImportResponse response = new ScheduleItemImportResponse(0, new ArrayList<>());
+        SlotBitmap slots = new SlotBitmap();
+        List<ScheduleItemCreateRequest> batch = new ArrayList<>(BATCH_SIZE);
+        long batchStart = 0;
+        long index = 0;
+
+        try (MappingIterator<ScheduleItemCreateRequest> it = requestReader.readValues(input)) {
+            while (true) {
+                ScheduleItemCreateRequest request;
+                try {
+                    if(!it.hasNextValue()) {
+                        break;
+                    }
+                    request = it.nextValue();
+                } catch (JsonProcessingException e) {
+                    response.getErrors().add(new ScheduleItemImportResponse.RowError(index, String.format("Malformed row: %s", e.getOriginalMessage())));
+                    break;
+                }
+
+                batch.add(request);
+                index++;
+                if(batch.size() == BATCH_SIZE) {
+                    importBatch(batch, batchStart, slots, response);
+                    batch.clear();
+                    batchStart = index;
+                }
+            }
+        }
+
+        if(!batch.isEmpty()) {
+            importBatch(batch, batchStart, slots, response);
+        }
+
+        return response;
+    }
+
+    private void importBatch(List<ScheduleItemCreateRequest> batch, long batchStart, SlotBitmap slots, ScheduleItemImportResponse response) {
+        Set<Long> groupIds = new HashSet<>();
+        Set<Long> subjectIds = new HashSet<>();
+        Set<Date> dates = new HashSet<>();
+        for(ScheduleItemCreateRequest request : batch) {
+            groupIds.add(request.getGroupId());
+            subjectIds.add(request.getSubjectId());
+            if(request.getDate() != null) {
+                dates.add(request.getDate());
+            }
+        }
+        scheduleItemService.loadSlots(slots, groupIds, dates);
+
+        Map<Long, Group> groups = groupService.getAll(groupIds).stream()
+                .collect(Collectors.toMap(Group::getId, Function.identity()));
+        Map<Long, Subject> subjects = subjectService.getAll(subjectIds).stream()
+                .collect(Collectors.toMap(Subject::getId, Function.identity()));
+
+        List<ScheduleItem> items = new ArrayList<>(batch.size());
+        List<Long> rows = new ArrayList<>(batch.size());
+        for(int i = 0; i < batch.size(); i++) {
+            ScheduleItemCreateRequest request = batch.get(i);
+            Group group = groups.get(request.getGroupId());
+            Subject subject = subjects.get(request.getSubjectId());
+            if(request.getDate() == null || request.getType() == null) {
+                response.getErrors().add(new ScheduleItemImportResponse.RowError(batchStart + i, "Date and type are required"));
+                continue;
+            }
+            if(group == null) {
+                response.getErrors().add(new ScheduleItemImportResponse.RowError(batchStart + i, String.format("Could not find group with id %d", request.getGroupId())));
+                continue;
+            }
+            if(subject == null) {
+                response.getErrors().add(new ScheduleItemImportResponse.RowError(batchStart + i, String.format("Could not find subject with id %d", request.getSubjectId())));
+                continue;
+            }
+
+            if(!slots.occupy(group.getId(), request.getDate(), request.getPosition())) {
+                response.getErrors().add(new ScheduleItemImportResponse.RowError(batchStart + i, String.format("Group %d already has an item at position %d on %s", group.getId(), request.getPosition(), request.getDate())));
+                continue;
+            }
+
+            items.add(new ScheduleItem(group, subject, request.getDate(), request.getPosition(), request.getType()));
+            rows.add(batchStart + i);
+        }
+
+        if(items.isEmpty()) {
+            return;
+        }
+        try {
+            scheduleItemService.saveAll(items);
+            response.setCreated(response.getCreated() + items.size());
+        } catch (SlotConflictException e) {
+            saveOneByOne(items, rows, response);
+        }
+    }
+
+    // A concurrent write took one of the slots after they were loaded, the batch is retried row by row
+    // so that only the rows that lost the race are reported
+    private void saveOneByOne(List<ScheduleItem> items, List<Long> rows, ScheduleItemImportResponse response) {
+        for(int i = 0; i < items.size(); i++) {
+            // The rolled back batch has already assigned ids to its items, so they are saved as new copies
+            ScheduleItem item = items.get(i);
+            try {
+                scheduleItemService.save(new ScheduleItem(item.getGroup(), item.getSubject(), item.getDate(), item.getPosition(), item.getType()));
+                response.setCreated(response.getCreated() + 1);
+            } catch (SlotConflictException e) {
+                response.getErrors().add(new ScheduleItemImportResponse.RowError(rows.get(i), e.getMessage()));
+            }
+        }
+    }
+}
@@ -1,44 +1,428 @@
 package ua.nure.mpj.lb2.services;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.*;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
 import ua.nure.mpj.lb2.entities.Group;
 import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.exceptions.EntityNotFoundException;
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
+import ua.nure.mpj.lb2.exceptions.SlotConflictException;
 import ua.nure.mpj.lb2.repositories.ScheduleItemRepository;
+import ua.nure.mpj.lb2.requests.ScheduleItemUpdateRequest;
+import ua.nure.mpj.lb2.responses.SlotConflictResponse;
+import ua.nure.mpj.lb2.responses.SubjectStatisticsResponse;
+import ua.nure.mpj.lb2.utils.SlotBitmap;
 
-import java.util.Optional;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Stream;
 
 @Service
+@DatabaseBound
+@Timed("service.calls")
 public class ScheduleItemService {
+    private static final String UNIQUE_VIOLATION = "23505";
+
     private final Sort SORT_BY_ID_ASC = Sort.by(Sort.Direction.ASC, "id");
+    private final Sort SORT_BY_DATE_POSITION_ASC = Sort.by(Sort.Direction.ASC, "date", "position", "id");
 
     private final ScheduleItemRepository scheduleItemRepository;
+    private final TimetableService timetableService;
+    private final ChangeCounterService changeCounterService;
+    private final ChangeLogService changeLogService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public ScheduleItemService(ScheduleItemRepository scheduleItemRepository) {
+    public ScheduleItemService(ScheduleItemRepository scheduleItemRepository, TimetableService timetableService, ChangeCounterService changeCounterService, ChangeLogService changeLogService) {
         this.scheduleItemRepository = scheduleItemRepository;
+        this.timetableService = timetableService;
+        this.changeCounterService = changeCounterService;
+        this.changeLogService = changeLogService;
     }
 
+    @Transactional(readOnly = true)
     public Page<ScheduleItem> list(int page, int pageSize) {
         return scheduleItemRepository.findAll(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
     }
 
+    @Transactional(readOnly = true)
     public Page<ScheduleItem> list(Group group, int page, int pageSize) {
         return scheduleItemRepository.findAllByGroup(group, PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
     }
 
+    @Transactional(readOnly = true)
+    public Page<ScheduleItem> list(Group group, Date from, Date to, int page, int pageSize) {
+        return scheduleItemRepository.findAllByGroupAndDateBetween(group, from, to, PageRequest.of(page, pageSize, SORT_BY_DATE_POSITION_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Page<ScheduleItem> list(Subject subject, Date from, Date to, int page, int pageSize) {
+        return scheduleItemRepository.findAllBySubjectAndDateBetween(subject, from, to, PageRequest.of(page, pageSize, SORT_BY_DATE_POSITION_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Page<ScheduleItem> list(Subject subject, int page, int pageSize) {
+        return scheduleItemRepository.findAllBySubject(subject, PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listSlice(int page, int pageSize) {
+        return scheduleItemRepository.findSliceBy(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listSlice(Group group, int page, int pageSize) {
+        return scheduleItemRepository.findSliceByGroup(group, PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listSlice(Subject subject, int page, int pageSize) {
+        return scheduleItemRepository.findSliceBySubject(subject, PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listAfter(long afterId, int pageSize) {
+        return toSlice(scheduleItemRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(pageSize + 1)), pageSize);
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listAfter(Group group, long afterId, int pageSize) {
+        return toSlice(scheduleItemRepository.findAllByGroupAndIdGreaterThanOrderByIdAsc(group, afterId, Limit.of(pageSize + 1)), pageSize);
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<ScheduleItem> listAfter(Subject subject, long afterId, int pageSize) {
+        return toSlice(scheduleItemRepository.findAllBySubjectAndIdGreaterThanOrderByIdAsc(subject, afterId, Limit.of(pageSize + 1)), pageSize);
+    }
+
+    @Transactional(readOnly = true)
+    public long count() {
+        return scheduleItemRepository.count();
+    }
+
+    @Transactional(readOnly = true)
+    public long count(Group group) {
+        return scheduleItemRepository.countByGroup(group);
+    }
+
+    @Transactional(readOnly = true)
+    public long count(Subject subject) {
+        return scheduleItemRepository.countBySubject(subject);
+    }
+
+    // The key includes the schedule items change counter, so every schedule write makes earlier entries unreachable
+    // and they age out of the cache instead of being evicted one by one
+    // Not read-only: cached results must come from the primary, not from a replica that may lag behind the tag
+    @Cacheable(cacheNames = "subjectStatistics", key = "#subjectId + ':' + #from + ':' + #to + ':' + @changeCounterService.scheduleItemsETag()")
+    @Transactional
+    public SubjectStatisticsResponse subjectStatistics(long subjectId, Date from, Date to) {
+        List<SubjectStatisticsResponse.Row> rows = new ArrayList<>();
+        Map<ScheduleItem.Type, Long> totals = new EnumMap<>(ScheduleItem.Type.class);
+        for(ScheduleItemRepository.StatisticsView row : scheduleItemRepository.countBySubjectGrouped(subjectId, from, to)) {
+            rows.add(new SubjectStatisticsResponse.Row(row.getGroupId(), String.format("%04d-%02d", row.getYear(), row.getMonth()), row.getType(), row.getCount()));
+            totals.merge(row.getType(), row.getCount(), Long::sum);
+        }
+        return new SubjectStatisticsResponse(subjectId, from, to, totals, rows);
+    }
+
+    // Planner statistics estimate, -1 means the table was never analyzed
+    @Transactional(readOnly = true)
+    public long approximateCount() {
+        long count = scheduleItemRepository.approximateCount();
+        return count < 0 ? scheduleItemRepository.count() : count;
+    }
+
+    @Transactional(readOnly = true)
     public Optional<ScheduleItem> get(long id) {
         return scheduleItemRepository.findById(id);
     }
 
+    // The item and its change log entry commit together
+    @Transactional
     public ScheduleItem save(ScheduleItem scheduleItem) {
-        return scheduleItemRepository.save(scheduleItem);
+        boolean created = scheduleItem.getId() == 0;
+        // The entity may already carry the new group, the database still has the old one
+        long previousGroupId = created ? scheduleItem.getGroup().getId() : scheduleItemRepository.findGroupIdById(scheduleItem.getId()).orElse(scheduleItem.getGroup().getId());
+        if(scheduleItemRepository.existsByGroupAndDateAndPositionAndIdNot(scheduleItem.getGroup(), scheduleItem.getDate(), scheduleItem.getPosition(), scheduleItem.getId())) {
+            throw slotConflict(scheduleItem.getGroup().getId(), scheduleItem.getDate(), scheduleItem.getPosition());
+        }
+
+        ScheduleItem result;
+        try {
+            // Flushed here, at commit a slot violation would no longer become a conflict
+            result = scheduleItemRepository.saveAndFlush(scheduleItem);
+        } catch (DataIntegrityViolationException e) {
+            // Lost a race with a concurrent write to the same slot
+            if(isSlotConflict(e)) {
+                throw slotConflict(scheduleItem.getGroup().getId(), scheduleItem.getDate(), scheduleItem.getPosition());
+            }
+            throw e;
+        }
+        timetableService.onSaved(result, previousGroupId);
+        changeCounterService.scheduleItemsChanged(previousGroupId, result.getGroup().getId());
+        changeLogService.record(ChangeLogEntry.EntityType.SCHEDULE_ITEM, result.getId(), created ? ChangeLogEntry.Operation.CREATE : ChangeLogEntry.Operation.UPDATE, result.getGroup().getId());
+        return result;
     }
 
+    // Flushes the batch and detaches it so that long imports do not grow the persistence context.
+    // A slot taken concurrently by another write rolls back the whole batch with a SlotConflictException.
+    @Transactional
+    public List<ScheduleItem> saveAll(List<ScheduleItem> scheduleItems) {
+        List<ScheduleItem> result = scheduleItemRepository.saveAll(scheduleItems);
+        // Flushed before any other statement, a query would auto-flush the inserts outside of the try
+        try {
+            entityManager.flush();
+        } catch (PersistenceException | DataIntegrityViolationException e) {
+            if(isSlotConflict(e)) {
+                throw new SlotConflictException("A schedule item in the batch takes a slot that is already occupied");
+            }
+            throw e;
+        }
+        entityManager.clear();
+        changeLogService.recordAll(result.stream()
+                .map(item -> new ChangeLogEntry(ChangeLogEntry.EntityType.SCHEDULE_ITEM, item.getId(), ChangeLogEntry.Operation.CREATE, item.getGroup().getId()))
+                .toList());
+        for(ScheduleItem item : result) {
+            timetableService.onSaved(item, item.getGroup().getId());
+        }
+        changeCounterService.scheduleItemsChanged(result.stream().mapToLong(item -> item.getGroup().getId()).distinct().toArray());
+        return result;
+    }
+
+    // Writes only the fields present in the request with a single UPDATE instead of loading and merging the item.
+    // When the client sent the version it read, the UPDATE is guarded by it and a lost update becomes a conflict.
+    @Transactional
+    public ScheduleItem update(long id, Long expectedVersion, ScheduleItemUpdateRequest updateBody) {
+        Optional<Long> previousGroupId = updateBody.getGroupId() != null ? scheduleItemRepository.findGroupIdById(id) : Optional.empty();
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<ScheduleItem> update = cb.createCriteriaUpdate(ScheduleItem.class);
+        Root<ScheduleItem> root = update.from(ScheduleItem.class);
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(root.get("id"), id));
+        if(expectedVersion != null) {
+            where.add(cb.equal(root.get("version"), expectedVersion));
+        }
+        if(updateBody.getGroupId() != null) {
+            update.set(root.<Group>get("group"), entityManager.getReference(Group.class, updateBody.getGroupId()));
+            where.add(referenceExists(cb, update, Group.class, updateBody.getGroupId()));
+        }
+        if(updateBody.getSubjectId() != null) {
+            update.set(root.<Subject>get("subject"), entityManager.getReference(Subject.class, updateBody.getSubjectId()));
+            where.add(referenceExists(cb, update, Subject.class, updateBody.getSubjectId()));
+        }
+        if(updateBody.getType() != null) {
+            update.set(root.<ScheduleItem.Type>get("type"), updateBody.getType());
+        }
+        if(updateBody.getDate() != null) {
+            update.set(root.<Date>get("date"), updateBody.getDate());
+        }
+        if(updateBody.getPosition() != null) {
+            update.set(root.<Byte>get("position"), updateBody.getPosition());
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.get("version"), 1L));
+        update.where(where.toArray(new Predicate[0]));
+
+        int updated;
+        try {
+            updated = entityManager.createQuery(update).executeUpdate();
+        } catch (PersistenceException e) {
+            if(isSlotConflict(e)) {
+                throw new SlotConflictException(String.format("Schedule item %d would take a slot that is already occupied", id));
+            }
+            throw e;
+        }
+        if(updated == 0) {
+            throw updateFailure(id, updateBody);
+        }
+
+        // The reference proxies would otherwise end up in the returned item and in its JSON
+        entityManager.clear();
+        ScheduleItem result = scheduleItemRepository.findById(id).orElseThrow();
+        timetableService.onSaved(result, previousGroupId.orElse(result.getGroup().getId()));
+        changeCounterService.scheduleItemsChanged(previousGroupId.orElse(result.getGroup().getId()), result.getGroup().getId());
+        changeLogService.record(ChangeLogEntry.EntityType.SCHEDULE_ITEM, id, ChangeLogEntry.Operation.UPDATE, result.getGroup().getId());
+        return result;
+    }
+
+    @Transactional
     public void deleteById(long id) {
+        Optional<Long> groupId = scheduleItemRepository.findGroupIdById(id);
         scheduleItemRepository.deleteById(id);
+        groupId.ifPresent(g -> {
+            timetableService.onDeleted(id, g);
+            changeCounterService.scheduleItemsChanged(g);
+            changeLogService.record(ChangeLogEntry.EntityType.SCHEDULE_ITEM, id, ChangeLogEntry.Operation.DELETE, g);
+        });
+    }
+
+    public boolean existsInGroups(Collection<Long> groupIds) {
+        return scheduleItemRepository.existsByGroupIdIn(groupIds);
+    }
+
+    public boolean existsWithSubjects(Collection<Long> subjectIds) {
+        return scheduleItemRepository.existsBySubjectIdIn(subjectIds);
+    }
+
+    @Transactional
+    public int deleteAllById(Collection<Long> ids) {
+        return ids.isEmpty() ? 0 : afterBulkDelete(scheduleItemRepository.deleteAllByIdReturning(ids));
+    }
+
+    @Transactional
+    public int deleteAllByGroupIds(Collection<Long> groupIds) {
+        return groupIds.isEmpty() ? 0 : afterBulkDelete(scheduleItemRepository.deleteAllByGroupIdReturning(groupIds));
+    }
+
+    @Transactional
+    public int deleteAllBySubjectIds(Collection<Long> subjectIds) {
+        return subjectIds.isEmpty() ? 0 : afterBulkDelete(scheduleItemRepository.deleteAllBySubjectIdReturning(subjectIds));
+    }
+
+    @Transactional
+    public int deleteAllByDateBetween(Long groupId, Date from, Date to) {
+        return afterBulkDelete(groupId == null
+                ? scheduleItemRepository.deleteAllByDateBetweenReturning(from, to)
+                : scheduleItemRepository.deleteAllByGroupIdAndDateBetweenReturning(groupId, from, to));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<String> getETag(long id) {
+        return scheduleItemRepository.findVersionsById(id)
+                .map(v -> String.format("\"%d.%d.%d\"", v.getVersion(), v.getGroupVersion(), v.getSubjectVersion()));
+    }
+
+    // Accepts the ETag returned by getETag, only the item's own version takes part in the comparison
+    public static Optional<Long> parseVersion(String etag) {
+        if(etag == null || etag.equals("*")) {
+            return Optional.empty();
+        }
+        String value = etag.startsWith("W/") ? etag.substring(2) : etag;
+        value = value.replace("\"", "");
+        int dot = value.indexOf('.');
+        try {
+            return Optional.of(Long.parseLong(dot < 0 ? value : value.substring(0, dot)));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid If-Match header");
+        }
+    }
+
+    public void loadSlots(SlotBitmap bitmap, Collection<Long> groupIds, Collection<Date> dates) {
+        if(groupIds.isEmpty() || dates.isEmpty()) {
+            return;
+        }
+        for(ScheduleItemRepository.SlotView slot : scheduleItemRepository.findSlots(groupIds, dates)) {
+            bitmap.occupy(slot.getGroupId(), slot.getDate(), slot.getPosition());
+        }
+    }
+
+    // Slots come ordered by group, date and position, so items sharing a slot are adjacent.
+    // Only rows written before the unique slot index existed can share a slot.
+    @Transactional(readOnly = true)
+    public List<SlotConflictResponse> findConflicts() {
+        List<SlotConflictResponse> conflicts = new ArrayList<>();
+        try (Stream<ScheduleItemRepository.SlotView> slots = scheduleItemRepository.streamAllSlots()) {
+            SlotConflictResponse current = null;
+            Iterator<ScheduleItemRepository.SlotView> it = slots.iterator();
+            while (it.hasNext()) {
+                ScheduleItemRepository.SlotView slot = it.next();
+                if(current != null && current.getGroupId() == slot.getGroupId() && current.getDate().equals(slot.getDate()) && current.getPosition() == slot.getPosition()) {
+                    current.getItemIds().add(slot.getId());
+                    continue;
+                }
+                if(current != null && current.getItemIds().size() > 1) {
+                    conflicts.add(current);
+                }
+                current = new SlotConflictResponse(slot.getGroupId(), slot.getDate(), slot.getPosition(), new ArrayList<>(List.of(slot.getId())));
+            }
+            if(current != null && current.getItemIds().size() > 1) {
+                conflicts.add(current);
+            }
+        }
+        return conflicts;
+    }
+
+    private int afterBulkDelete(List<ScheduleItemRepository.DeletedView> deleted) {
+        if(deleted.isEmpty()) {
+            return 0;
+        }
+
+        long[] groupIds = deleted.stream().mapToLong(ScheduleItemRepository.DeletedView::getGroupId).distinct().toArray();
+        for(long groupId : groupIds) {
+            timetableService.invalidateGroup(groupId);
+        }
+        changeCounterService.scheduleItemsChanged(groupIds);
+        changeLogService.recordAll(deleted.stream()
+                .map(item -> new ChangeLogEntry(ChangeLogEntry.EntityType.SCHEDULE_ITEM, item.getId(), ChangeLogEntry.Operation.DELETE, item.getGroupId()))
+                .toList());
+        return deleted.size();
+    }
+
+    private static <T> Predicate referenceExists(CriteriaBuilder cb, CriteriaUpdate<?> update, Class<T> type, long id) {
+        Subquery<Long> subquery = update.subquery(Long.class);
+        Root<T> root = subquery.from(type);
+        return cb.exists(subquery.select(root.get("id")).where(cb.equal(root.get("id"), id)));
+    }
+
+    // Only reached when the UPDATE matched nothing, so the extra lookups stay off the common path
+    private RuntimeException updateFailure(long id, ScheduleItemUpdateRequest updateBody) {
+        if(!scheduleItemRepository.existsById(id)) {
+            return new EntityNotFoundException(String.format("Could not find schedule item with id %d", id));
+        }
+        if(updateBody.getGroupId() != null && entityManager.find(Group.class, updateBody.getGroupId()) == null) {
+            return new EntityNotFoundException(String.format("Could not find group with id %d", updateBody.getGroupId()));
+        }
+        if(updateBody.getSubjectId() != null && entityManager.find(Subject.class, updateBody.getSubjectId()) == null) {
+            return new EntityNotFoundException(String.format("Could not find subject with id %d", updateBody.getSubjectId()));
+        }
+        return new ObjectOptimisticLockingFailureException(ScheduleItem.class, id);
+    }
+
+    // Depending on where it surfaces, the violation comes either as is or wrapped by Spring or JPA.
+    // Translated by Spring's SQL exception translator it carries only the driver's exception, whose message names the index.
+    private static boolean isSlotConflict(Throwable e) {
+        for(Throwable t = e; t != null; t = t.getCause()) {
+            if(t instanceof ConstraintViolationException cve && ScheduleItem.SLOT_INDEX.equals(cve.getConstraintName())) {
+                return true;
+            }
+            if(t instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())
+                    && sqlException.getMessage() != null && sqlException.getMessage().contains(ScheduleItem.SLOT_INDEX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SlotConflictException slotConflict(long groupId, Date date, byte position) {
+        return new SlotConflictException(String.format("Group %d already has an item at position %d on %s", groupId, position, date));
+    }
+
+    // One extra row is fetched to find out whether there is a next page without running a count query
+    private Slice<ScheduleItem> toSlice(List<ScheduleItem> items, int pageSize) {
+        boolean hasNext = items.size() > pageSize;
+        if(hasNext) {
+            items = items.subList(0, pageSize);
+        }
+        return new SliceImpl<>(items, Pageable.ofSize(pageSize), hasNext);
     }
 }
@@ -0,0 +1,220 @@
+package ua.nure.mpj.lb2.services;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.repositories.GroupRepository;
+import ua.nure.mpj.lb2.repositories.SubjectRepository;
+import ua.nure.mpj.lb2.utils.TransactionCallbacks;
+import ua.nure.mpj.lb2.utils.TrigramIndex;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Prefix and fuzzy search over group and subject names. Served from in-memory trigram indexes kept up to date
+ * by the group and subject services; when there are more rows than app.search.in-memory-limit the indexes are
+ * dropped and plain substring queries are used instead. The indexes are built on startup, or by the first search
+ * if that comes earlier; searches arriving meanwhile wait for the build to finish. A failed build is retried by
+ * the next search.
+ */
+@Service
+@Timed("service.calls")
+public class SearchService {
+    private static final double THRESHOLD = 0.5;
+    // Stale ids found in one search are removed before the next attempt fills their places
+    private static final int STALE_ATTEMPTS = 3;
+
+    private final GroupRepository groupRepository;
+    private final SubjectRepository subjectRepository;
+    private final long inMemoryLimit;
+    private final TransactionTemplate buildTransaction;
+
+    private final TrigramIndex groupIndex = new TrigramIndex();
+    private final TrigramIndex subjectIndex = new TrigramIndex();
+    private volatile Mode mode = Mode.PENDING;
+
+    @Autowired
+    public SearchService(
+            GroupRepository groupRepository,
+            SubjectRepository subjectRepository,
+            @Value("${app.search.in-memory-limit:100000}") long inMemoryLimit,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.groupRepository = groupRepository;
+        this.subjectRepository = subjectRepository;
+        this.inMemoryLimit = inMemoryLimit;
+        // A transaction of its own that is not read-only: rows missing on a lagging replica would stay missing from the index
+        this.buildTransaction = new TransactionTemplate(transactionManager);
+        this.buildTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ensureBuilt();
+    }
+
+    @Transactional(readOnly = true)
+    public List<Group> searchGroups(String query, int limit) {
+        if(!ensureBuilt()) {
+            return groupRepository.search(likePattern(query), likePrefix(query), limit);
+        }
+        return searchIndex(groupIndex, query, limit, groupRepository::findAllById, groupRepository::findExistingIds, Group::getId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<Subject> searchSubjects(String query, int limit) {
+        if(!ensureBuilt()) {
+            return subjectRepository.search(likePattern(query), likePrefix(query), limit);
+        }
+        return searchIndex(subjectIndex, query, limit, subjectRepository::findAllById, subjectRepository::findExistingIds, Subject::getId);
+    }
+
+    public void onGroupSaved(Group group) {
+        TransactionCallbacks.afterCommit(() -> indexGroup(group));
+    }
+
+    public void onGroupsDeleted(Collection<Long> ids) {
+        TransactionCallbacks.afterCommit(() -> ids.forEach(groupIndex::remove));
+    }
+
+    public void onSubjectSaved(Subject subject) {
+        TransactionCallbacks.afterCommit(() -> indexSubject(subject));
+    }
+
+    public void onSubjectsDeleted(Collection<Long> ids) {
+        TransactionCallbacks.afterCommit(() -> ids.forEach(subjectIndex::remove));
+    }
+
+    // Returns whether searches are answered from the indexes, a build in progress is waited for
+    private boolean ensureBuilt() {
+        if(mode == Mode.PENDING || mode == Mode.BUILDING) {
+            build();
+        }
+        return mode == Mode.IN_MEMORY;
+    }
+
+    // Writes committed while the rows are loaded already go to the indexes and are not overwritten by the load
+    private synchronized void build() {
+        if(mode != Mode.PENDING) {
+            return;
+        }
+        mode = Mode.BUILDING;
+        boolean fits;
+        try {
+            fits = Boolean.TRUE.equals(buildTransaction.execute(status -> {
+                if(groupRepository.count() + subjectRepository.count() > inMemoryLimit) {
+                    return false;
+                }
+                groupRepository.findAll().forEach(group -> groupIndex.putIfAbsent(group.getId(), group.getName()));
+                subjectRepository.findAll().forEach(subject -> subjectIndex.putIfAbsent(subject.getId(), subject.getName(), subject.getShortName()));
+                return true;
+            }));
+        } catch (RuntimeException e) {
+            mode = Mode.PENDING;
+            groupIndex.clear();
+            subjectIndex.clear();
+            throw e;
+        }
+        if(fits && !exceedsLimit()) {
+            mode = Mode.IN_MEMORY;
+        } else {
+            switchToDatabase();
+        }
+    }
+
+    private <T> List<T> searchIndex(
+            TrigramIndex index,
+            String query,
+            int limit,
+            Function<List<Long>, List<T>> load,
+            Function<Collection<Long>, List<Long>> findExisting,
+            Function<T, Long> getId
+    ) {
+        for(int attempt = 1; ; attempt++) {
+            List<Long> ids = index.search(query, THRESHOLD, limit);
+            List<T> entities = inOrder(ids, load.apply(ids), getId);
+            if(entities.size() == ids.size() || attempt == STALE_ATTEMPTS) {
+                return entities;
+            }
+
+            // Rows deleted behind the index's back take the places of real matches. The read may come from a
+            // lagging replica, so only ids the primary does not have either are removed.
+            Set<Long> found = entities.stream().map(getId).collect(Collectors.toSet());
+            List<Long> missing = ids.stream().filter(id -> !found.contains(id)).toList();
+            Set<Long> existing = new HashSet<>(findExisting.apply(missing));
+            if(existing.size() == missing.size()) {
+                return entities;
+            }
+            missing.stream().filter(id -> !existing.contains(id)).forEach(index::remove);
+        }
+    }
+
+    private void indexGroup(Group group) {
+        if(mode == Mode.BUILDING || mode == Mode.IN_MEMORY) {
+            groupIndex.put(group.getId(), group.getName());
+            checkLimit();
+        }
+    }
+
+    private void indexSubject(Subject subject) {
+        if(mode == Mode.BUILDING || mode == Mode.IN_MEMORY) {
+            subjectIndex.put(subject.getId(), subject.getName(), subject.getShortName());
+            checkLimit();
+        }
+    }
+
+    // Inserts can grow the indexes past the limit after they were built
+    private void checkLimit() {
+        if(mode == Mode.IN_MEMORY && exceedsLimit()) {
+            switchToDatabase();
+        }
+    }
+
+    private boolean exceedsLimit() {
+        return groupIndex.size() + subjectIndex.size() > inMemoryLimit;
+    }
+
+    private synchronized void switchToDatabase() {
+        mode = Mode.DATABASE;
+        groupIndex.clear();
+        subjectIndex.clear();
+    }
+
+    private static String likePrefix(String query) {
+        return escapeLike(query) + "%";
+    }
+
+    private static String likePattern(String query) {
+        return "%" + escapeLike(query) + "%";
+    }
+
+    // Lower-cased like the columns in the queries
+    private static String escapeLike(String query) {
+        return query.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // findAllById does not keep the order of the ids, and drops rows deleted behind the index's back
+    private static <T> List<T> inOrder(List<Long> ids, List<T> entities, Function<T, Long> getId) {
+        Map<Long, T> byId = new HashMap<>();
+        entities.forEach(entity -> byId.put(getId.apply(entity), entity));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    private enum Mode {
+        PENDING,
+        BUILDING,
+        IN_MEMORY,
+        DATABASE,
+    }
+}
@@ -0,0 +1,70 @@
+package ua.nure.mpj.lb2.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ua.nure.mpj.lb2.config.SecondLevelCacheConfig;
+import ua.nure.mpj.lb2.responses.CacheRegionStatsResponse;
+import ua.nure.mpj.lb2.utils.TransactionCallbacks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hibernate keeps its second-level cache in step with the writes it makes itself, but not with native statements
+ * (bulk deletes, upserts), so the services evict what those touched here.
+ */
+@Service
+public class SecondLevelCacheService {
+    private final SessionFactory sessionFactory;
+
+    @Autowired
+    public SecondLevelCacheService(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    // Evicting before the commit would let a concurrent read load the old row back into the cache
+    public void evict(Class<?> entityClass, Collection<Long> ids) {
+        TransactionCallbacks.afterCommit(() -> ids.forEach(id -> sessionFactory.getCache().evict(entityClass, id)));
+    }
+
+    public void evictQueryRegion(String region) {
+        TransactionCallbacks.afterCommit(() -> sessionFactory.getCache().evictQueryRegion(region));
+    }
+
+    // Empty when the cache is turned off, e.g. with a read replica configured
+    public List<CacheRegionStatsResponse> regionStats() {
+        if(!sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled()) {
+            return List.of();
+        }
+        Statistics statistics = sessionFactory.getStatistics();
+        List<CacheRegionStatsResponse> result = new ArrayList<>();
+        for(String region : SecondLevelCacheConfig.ENTITY_REGIONS) {
+            result.add(toResponse(region, "entity", statistics.getDomainDataRegionStatistics(region)));
+        }
+        for(String region : SecondLevelCacheConfig.QUERY_REGIONS) {
+            result.add(toResponse(region, "query", statistics.getQueryRegionStatistics(region)));
+        }
+        return result;
+    }
+
+    private static CacheRegionStatsResponse toResponse(String region, String type, CacheRegionStatistics stats) {
+        if(stats == null) {
+            return new CacheRegionStatsResponse(region, type, 0, 0, 0, 0, 0);
+        }
+        long requests = stats.getHitCount() + stats.getMissCount();
+        return new CacheRegionStatsResponse(
+                region,
+                type,
+                stats.getElementCountInMemory(),
+                stats.getHitCount(),
+                stats.getMissCount(),
+                stats.getPutCount(),
+                requests == 0 ? 0 : (double) stats.getHitCount() / requests
+        );
+    }
+}
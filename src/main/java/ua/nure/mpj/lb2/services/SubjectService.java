@@ -1,39 +1,138 @@
 package ua.nure.mpj.lb2.services;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ua.nure.mpj.lb2.entities.ChangeLogEntry;
 import ua.nure.mpj.lb2.entities.Subject;
+import ua.nure.mpj.lb2.exceptions.DependentEntitiesException;
 import ua.nure.mpj.lb2.repositories.SubjectRepository;
+import ua.nure.mpj.lb2.responses.BulkDeleteResponse;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Service
+@DatabaseBound
+@Timed("service.calls")
 public class SubjectService {
     private final Sort SORT_BY_ID_ASC = Sort.by(Sort.Direction.ASC, "id");
 
     private final SubjectRepository subjectRepository;
+    private final TimetableService timetableService;
+    private final ChangeCounterService changeCounterService;
+    private final ChangeLogService changeLogService;
+    private final ScheduleItemService scheduleItemService;
+    private final DeletePolicy deletePolicy;
+    private final SearchService searchService;
+    private final SecondLevelCacheService secondLevelCacheService;
 
     @Autowired
-    public SubjectService(SubjectRepository subjectRepository) {
+    public SubjectService(
+            SubjectRepository subjectRepository,
+            TimetableService timetableService,
+            ChangeCounterService changeCounterService,
+            ChangeLogService changeLogService,
+            ScheduleItemService scheduleItemService,
+            @Value("${app.delete-policy:RESTRICT}") DeletePolicy deletePolicy,
+            SearchService searchService,
+            SecondLevelCacheService secondLevelCacheService
+    ) {
         this.subjectRepository = subjectRepository;
+        this.timetableService = timetableService;
+        this.changeCounterService = changeCounterService;
+        this.changeLogService = changeLogService;
+        this.scheduleItemService = scheduleItemService;
+        this.deletePolicy = deletePolicy;
+        this.searchService = searchService;
+        this.secondLevelCacheService = secondLevelCacheService;
     }
 
+    @Transactional(readOnly = true)
     public Page<Subject> list(int page, int pageSize) {
         return subjectRepository.findAll(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
     }
 
+    @Transactional(readOnly = true)
+    public Slice<Subject> listSlice(int page, int pageSize) {
+        return subjectRepository.findSliceBy(PageRequest.of(page, pageSize, SORT_BY_ID_ASC));
+    }
+
+    @Transactional(readOnly = true)
+    public long approximateCount() {
+        long count = subjectRepository.approximateCount();
+        return count < 0 ? subjectRepository.count() : count;
+    }
+
+    // Served from the Hibernate second-level cache when it is enabled
+    @Transactional(readOnly = true)
     public Optional<Subject> get(long id) {
         return subjectRepository.findById(id);
     }
 
+    @Transactional(readOnly = true)
+    public List<Subject> getAll(Collection<Long> ids) {
+        return subjectRepository.findAllById(ids);
+    }
+
+    @Transactional
     public Subject save(Subject subject) {
-        return subjectRepository.save(subject);
+        boolean created = subject.getId() == 0;
+        Subject result = subjectRepository.saveAndFlush(subject);
+        if(!created) {
+            timetableService.invalidateAll();
+        }
+        changeCounterService.subjectsChanged(result.getId());
+        changeLogService.record(ChangeLogEntry.EntityType.SUBJECT, result.getId(), created ? ChangeLogEntry.Operation.CREATE : ChangeLogEntry.Operation.UPDATE, null);
+        searchService.onSubjectSaved(result);
+        return result;
     }
 
+    @Transactional
     public void deleteById(long id) {
-        subjectRepository.deleteById(id);
+        delete(List.of(id));
+    }
+
+    @Transactional
+    public BulkDeleteResponse deleteAllById(Collection<Long> ids) {
+        return delete(ids);
+    }
+
+    // Schedule items are removed with one statement per call rather than loaded and deleted one by one
+    private BulkDeleteResponse delete(Collection<Long> ids) {
+        if(ids.isEmpty()) {
+            return new BulkDeleteResponse(0, 0);
+        }
+
+        int scheduleItemsDeleted = 0;
+        if(deletePolicy == DeletePolicy.CASCADE) {
+            scheduleItemsDeleted = scheduleItemService.deleteAllBySubjectIds(ids);
+        } else if(scheduleItemService.existsWithSubjects(ids)) {
+            throw new DependentEntitiesException("Some of the subjects are still used by schedule items");
+        }
+
+        List<Long> deleted;
+        try {
+            deleted = subjectRepository.deleteAllByIdReturning(ids);
+        } catch (DataIntegrityViolationException e) {
+            // A schedule item was added concurrently, after the check or the cascade above
+            throw new DependentEntitiesException("Some of the subjects are still used by schedule items");
+        }
+        searchService.onSubjectsDeleted(deleted);
+        secondLevelCacheService.evict(Subject.class, deleted);
+        timetableService.invalidateAll();
+        changeCounterService.subjectsChanged(deleted.stream().mapToLong(Long::longValue).toArray());
+        changeLogService.recordAll(deleted.stream()
+                .map(id -> new ChangeLogEntry(ChangeLogEntry.EntityType.SUBJECT, id, ChangeLogEntry.Operation.DELETE, null))
+                .toList());
+        return new BulkDeleteResponse(deleted.size(), scheduleItemsDeleted);
     }
 }
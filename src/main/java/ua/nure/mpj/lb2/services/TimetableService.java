@@ -0,0 +1,209 @@
+package ua.nure.mpj.lb2.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ua.nure.mpj.lb2.entities.ScheduleItem;
+import ua.nure.mpj.lb2.repositories.ScheduleItemRepository;
+import ua.nure.mpj.lb2.responses.WeekTimetableResponse;
+import ua.nure.mpj.lb2.utils.TransactionCallbacks;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Keeps materialized per-group week timetables. A week is loaded from the database on first request and
+ * afterwards patched in place by committed schedule item writes instead of being recomputed.
+ * The weeks are bounded by app.timetable.cache-size and dropped after app.timetable.expire-after-access.
+ */
+@Service
+@DatabaseBound
+public class TimetableService {
+    private final ScheduleItemRepository scheduleItemRepository;
+
+    // Values are immutable and only replaced while holding their group's entry in groups
+    private final Cache<WeekKey, Map<Long, Slot>> weeks;
+    // Cached weeks of each group, so that a write touches only the weeks of its own groups. An entry is only
+    // changed inside groups.compute, which also serializes the writes and loads of one group.
+    private final Map<Long, GroupWeeks> groups = new ConcurrentHashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+
+    @Autowired
+    public TimetableService(
+            ScheduleItemRepository scheduleItemRepository,
+            @Value("${app.timetable.cache-size:10000}") long cacheSize,
+            @Value("${app.timetable.expire-after-access:30m}") Duration expireAfterAccess
+    ) {
+        this.scheduleItemRepository = scheduleItemRepository;
+        this.weeks = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(expireAfterAccess)
+                .<WeekKey, Map<Long, Slot>>removalListener((key, slots, cause) -> {
+                    if(key != null && cause != RemovalCause.REPLACED) {
+                        forget(key);
+                    }
+                })
+                .build();
+    }
+
+    public WeekTimetableResponse getWeek(long groupId, LocalDate date) {
+        WeekKey key = new WeekKey(groupId, weekStart(date));
+        Map<Long, Slot> slots = weeks.getIfPresent(key);
+        if(slots == null) {
+            slots = loadAndCache(key);
+        }
+
+        List<List<WeekTimetableResponse.Cell>> days = new ArrayList<>(7);
+        for(int i = 0; i < 7; i++) {
+            days.add(new ArrayList<>());
+        }
+        slots.values().stream()
+                .sorted(Comparator.comparingInt(Slot::position).thenComparingLong(Slot::itemId))
+                .forEach(slot -> days.get(slot.day()).add(new WeekTimetableResponse.Cell(slot.itemId(), slot.position(), slot.subjectId(), slot.subject(), slot.type())));
+
+        return new WeekTimetableResponse(groupId, Date.valueOf(key.weekStart()), days);
+    }
+
+    /**
+     * Places the item into its week once the transaction commits.
+     * previousGroupId is the group the item belonged to before the write, the item's own group for new items.
+     */
+    public void onSaved(ScheduleItem item, long previousGroupId) {
+        // Taken now, the entity may be detached or changed by the time the transaction commits
+        long itemId = item.getId();
+        WeekKey key = new WeekKey(item.getGroup().getId(), weekStart(item.getDate().toLocalDate()));
+        Slot slot = Slot.of(item, key.weekStart());
+
+        TransactionCallbacks.afterCommit(() -> {
+            if(previousGroupId != key.groupId()) {
+                patchGroup(previousGroupId, (k, slots) -> without(slots, itemId));
+            }
+            patchGroup(key.groupId(), (k, slots) -> {
+                Map<Long, Slot> result = without(slots, itemId);
+                if(!k.equals(key)) {
+                    return result;
+                }
+                result = new HashMap<>(result);
+                result.put(itemId, slot);
+                return Map.copyOf(result);
+            });
+        });
+    }
+
+    public void onDeleted(long itemId, long groupId) {
+        TransactionCallbacks.afterCommit(() -> patchGroup(groupId, (k, slots) -> without(slots, itemId)));
+    }
+
+    public void invalidateGroup(long groupId) {
+        TransactionCallbacks.afterCommit(() -> invalidate(groupId));
+    }
+
+    public void invalidateAll() {
+        TransactionCallbacks.afterCommit(() -> {
+            for(long groupId : groups.keySet()) {
+                invalidate(groupId);
+            }
+        });
+    }
+
+    // The query runs without holding the group, a write committed meanwhile bumps the group's generation
+    // and the possibly outdated result is returned to this caller only
+    private Map<Long, Slot> loadAndCache(WeekKey key) {
+        long generation = groups.computeIfAbsent(key.groupId(), id -> new GroupWeeks(generations.incrementAndGet())).generation;
+        Map<Long, Slot> slots = load(key);
+        groups.computeIfPresent(key.groupId(), (id, group) -> {
+            if(group.generation == generation) {
+                weeks.put(key, slots);
+                group.weekStarts.add(key.weekStart());
+            }
+            return group;
+        });
+        return slots;
+    }
+
+    // A group without an entry has neither cached weeks nor loads in progress
+    private void patchGroup(long groupId, BiFunction<WeekKey, Map<Long, Slot>, Map<Long, Slot>> patch) {
+        groups.computeIfPresent(groupId, (id, group) -> {
+            group.generation = generations.incrementAndGet();
+            for(LocalDate weekStart : group.weekStarts) {
+                weeks.asMap().computeIfPresent(new WeekKey(groupId, weekStart), patch);
+            }
+            return group;
+        });
+    }
+
+    private void invalidate(long groupId) {
+        groups.computeIfPresent(groupId, (id, group) -> {
+            group.generation = generations.incrementAndGet();
+            for(LocalDate weekStart : group.weekStarts) {
+                weeks.invalidate(new WeekKey(groupId, weekStart));
+            }
+            group.weekStarts.clear();
+            return group;
+        });
+    }
+
+    // Called for evicted and expired weeks, the week may have been loaded again in the meantime
+    private void forget(WeekKey key) {
+        groups.computeIfPresent(key.groupId(), (id, group) -> {
+            if(weeks.getIfPresent(key) == null) {
+                group.weekStarts.remove(key.weekStart());
+            }
+            return group;
+        });
+    }
+
+    private Map<Long, Slot> load(WeekKey key) {
+        Date from = Date.valueOf(key.weekStart());
+        Date to = Date.valueOf(key.weekStart().plusDays(6));
+
+        Map<Long, Slot> slots = new HashMap<>();
+        for(ScheduleItem item : scheduleItemRepository.findAllByGroupIdAndDateBetween(key.groupId(), from, to)) {
+            slots.put(item.getId(), Slot.of(item, key.weekStart()));
+        }
+        return Map.copyOf(slots);
+    }
+
+    private static Map<Long, Slot> without(Map<Long, Slot> slots, long itemId) {
+        if(!slots.containsKey(itemId)) {
+            return slots;
+        }
+        Map<Long, Slot> result = new HashMap<>(slots);
+        result.remove(itemId);
+        return Map.copyOf(result);
+    }
+
+    private static LocalDate weekStart(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static final class GroupWeeks {
+        private volatile long generation;
+        private final Set<LocalDate> weekStarts = new HashSet<>();
+
+        private GroupWeeks(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    private record WeekKey(long groupId, LocalDate weekStart) {
+    }
+
+    private record Slot(long itemId, int day, byte position, long subjectId, String subject, ScheduleItem.Type type) {
+        static Slot of(ScheduleItem item, LocalDate weekStart) {
+            int day = (int) ChronoUnit.DAYS.between(weekStart, item.getDate().toLocalDate());
+            return new Slot(item.getId(), day, item.getPosition(), item.getSubject().getId(), item.getSubject().getShortName(), item.getType());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ua.nure.mpj.lb2.utils;
+
+import ua.nure.mpj.lb2.exceptions.InvalidRequestException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursors. A cursor wraps the id of the last item of the previous page,
+ * clients should treat it as an arbitrary string and only pass it back in the "cursor" parameter.
+ */
+public final class Cursors {
+    private Cursors() {
+    }
+
+    public static String encode(long lastId) {
+        byte[] bytes = ByteBuffer.allocate(Long.BYTES).putLong(lastId).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public static long decode(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+        if(bytes.length != Long.BYTES) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+}
@@ -0,0 +1,30 @@
+package ua.nure.mpj.lb2.utils;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Occupied schedule positions, one bitmap per group and day. Not thread safe.
+ */
+public class SlotBitmap {
+    private final Map<SlotDay, BitSet> days = new HashMap<>();
+
+    /**
+     * Marks the slot as occupied, returns false if it already was.
+     */
+    public boolean occupy(long groupId, Date date, byte position) {
+        BitSet positions = days.computeIfAbsent(new SlotDay(groupId, date.toLocalDate()), k -> new BitSet(8));
+        int index = Byte.toUnsignedInt(position);
+        if(positions.get(index)) {
+            return false;
+        }
+        positions.set(index);
+        return true;
+    }
+
+    private record SlotDay(long groupId, LocalDate date) {
+    }
+}
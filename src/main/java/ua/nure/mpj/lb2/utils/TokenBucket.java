@@ -0,0 +1,38 @@
+package ua.nure.mpj.lb2.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count it keeps the time at which the bucket would be full again
+ * (the "theoretical arrival time" of GCRA), so taking a token is a single compare-and-set on one long.
+ */
+public class TokenBucket {
+    private final long interval;
+    private final long capacity;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double tokensPerSecond, int capacity) {
+        this.interval = (long) (1_000_000_000L / tokensPerSecond);
+        this.capacity = capacity * interval;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    // Returns 0 when a token was taken, otherwise the nanoseconds until the next one becomes available
+    public long tryAcquire(long nanoTime) {
+        while(true) {
+            long current = fullAt.get();
+            long next = (current - nanoTime > 0 ? current : nanoTime) + interval;
+            long wait = next - nanoTime - capacity;
+            if(wait > 0) {
+                return wait;
+            }
+            if(fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+}
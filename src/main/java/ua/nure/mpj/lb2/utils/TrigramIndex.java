@@ -0,0 +1,104 @@
+package ua.nure.mpj.lb2.utils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory trigram index over short texts, finds both word prefixes and misspelled words.
+ * Words are split into trigrams the way pg_trgm does it: padded with two spaces in front and one behind.
+ * Writes are serialized, searches run concurrently with them.
+ */
+public class TrigramIndex {
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> trigramsById = new ConcurrentHashMap<>();
+
+    public synchronized void put(long id, String... texts) {
+        remove(id);
+        Set<String> trigrams = new HashSet<>();
+        for(String text : texts) {
+            if(text != null) {
+                trigrams.addAll(trigrams(text, true));
+            }
+        }
+        trigramsById.put(id, trigrams);
+        for(String trigram : trigrams) {
+            postings.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    // For loading the index while writes are already applied to it, a newer entry is not replaced
+    public synchronized void putIfAbsent(long id, String... texts) {
+        if(!trigramsById.containsKey(id)) {
+            put(id, texts);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        Set<String> trigrams = trigramsById.remove(id);
+        if(trigrams == null) {
+            return;
+        }
+        for(String trigram : trigrams) {
+            postings.computeIfPresent(trigram, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        trigramsById.clear();
+    }
+
+    public int size() {
+        return trigramsById.size();
+    }
+
+    /**
+     * Returns ids ordered by the share of the query's trigrams they contain, shorter texts first on ties.
+     * The last query word is treated as unfinished, so a prefix of a word scores 1.
+     */
+    public List<Long> search(String query, double threshold, int limit) {
+        Set<String> queryTrigrams = trigrams(query, false);
+        if(queryTrigrams.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> hits = new HashMap<>();
+        for(String trigram : queryTrigrams) {
+            Set<Long> ids = postings.get(trigram);
+            if(ids != null) {
+                for(Long id : ids) {
+                    hits.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+
+        int required = (int) Math.ceil(threshold * queryTrigrams.size());
+        return hits.entrySet().stream()
+                .filter(hit -> hit.getValue() >= required)
+                .sorted(Comparator.<Map.Entry<Long, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                        .thenComparingInt(hit -> trigramsById.getOrDefault(hit.getKey(), Set.of()).size())
+                        .thenComparingLong(Map.Entry::getKey))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    static Set<String> trigrams(String text, boolean complete) {
+        List<String> words = Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+
+        Set<String> trigrams = new LinkedHashSet<>();
+        for(int i = 0; i < words.size(); i++) {
+            boolean last = i == words.size() - 1;
+            String padded = "  " + words.get(i) + (complete || !last ? " " : "");
+            for(int j = 0; j + 3 <= padded.length(); j++) {
+                trigrams.add(padded.substring(j, j + 3));
+            }
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,153 @@
+package ua.nure.mpj.lb2;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import ua.nure.mpj.lb2.config.ConcurrencyLimitAspect;
+import ua.nure.mpj.lb2.services.DatabaseBound;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = MpjLb2Application.class)
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "app.rate-limit.requests-per-second=0.01",
+        "app.rate-limit.burst=2",
+        "app.rate-limit.api-keys=client1,client2",
+        // The filter variant, MockMvc does not go through Tomcat's valve that native relies on
+        "server.forward-headers-strategy=framework",
+        "app.concurrency-limit.max-concurrent=5"
+})
+class MpjLb2AdmissionTests {
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConcurrencyLimitAspect concurrencyLimitAspect;
+
+    @Test
+    void rateLimit_perClient() throws Exception {
+        double rejected = rejected("rate_limit");
+        mvc.perform(get("/groups/").header("X-Api-Key", "client1"))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Api-Key", "client1"))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Api-Key", "client1"))
+                .andExpect(status().is(429))
+                .andExpect(header().exists("Retry-After"))
+                .andExpect(jsonPath("$.message").exists())
+        ;
+
+        mvc.perform(get("/groups/").header("X-Api-Key", "client2"))
+                .andExpect(status().is(200));
+
+        assertEquals(rejected + 1, rejected("rate_limit"));
+        assertEquals(0.0, meterRegistry.get("service.calls.active").gauge().value());
+    }
+
+    @Test
+    void rateLimit_unknownKeysShareRemoteAddress() throws Exception {
+        mvc.perform(get("/groups/").header("X-Api-Key", "unknown1").with(remoteAddr("10.0.0.1")))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Api-Key", "unknown2").with(remoteAddr("10.0.0.1")))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Api-Key", "unknown3").with(remoteAddr("10.0.0.1")))
+                .andExpect(status().is(429));
+
+        mvc.perform(get("/groups/").with(remoteAddr("10.0.0.2")))
+                .andExpect(status().is(200));
+    }
+
+    @Test
+    void rateLimit_behindProxy() throws Exception {
+        mvc.perform(get("/groups/").header("X-Forwarded-For", "203.0.113.1").with(remoteAddr("10.0.1.1")))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Forwarded-For", "203.0.113.1").with(remoteAddr("10.0.1.1")))
+                .andExpect(status().is(200));
+        mvc.perform(get("/groups/").header("X-Forwarded-For", "203.0.113.1").with(remoteAddr("10.0.1.1")))
+                .andExpect(status().is(429));
+
+        // Same proxy, another client
+        mvc.perform(get("/groups/").header("X-Forwarded-For", "203.0.113.2").with(remoteAddr("10.0.1.1")))
+                .andExpect(status().is(200));
+    }
+
+    @Test
+    void concurrencyLimit_overloaded() throws Exception {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new BlockingService());
+        factory.addAspect(concurrencyLimitAspect);
+        BlockingService service = factory.getProxy();
+
+        CountDownLatch entered = new CountDownLatch(5);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> service.block(entered, release));
+            thread.start();
+            threads.add(thread);
+        }
+        double rejected = rejected("concurrency_limit");
+
+        try {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            assertEquals(5.0, meterRegistry.get("service.calls.active").gauge().value());
+
+            mvc.perform(get("/groups/").with(remoteAddr("10.0.0.3")))
+                    .andExpect(status().is(503))
+                    .andExpect(header().exists("Retry-After"))
+                    .andExpect(jsonPath("$.message").exists())
+            ;
+            assertEquals(rejected + 1, rejected("concurrency_limit"));
+        } finally {
+            release.countDown();
+            for(Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        mvc.perform(get("/groups/").with(remoteAddr("10.0.0.3")))
+                .andExpect(status().is(200));
+        assertEquals(0.0, meterRegistry.get("service.calls.active").gauge().value());
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("http.requests.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static RequestPostProcessor remoteAddr(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+    // Holds a permit of the aspect until released
+    @DatabaseBound
+    static class BlockingService {
+        public void block(CountDownLatch entered, CountDownLatch release) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,22 +1,35 @@
 package ua.nure.mpj.lb2;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.jdbc.JdbcTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
 import ua.nure.mpj.lb2.entities.Group;
+import ua.nure.mpj.lb2.repositories.GroupRepository;
+import ua.nure.mpj.lb2.repositories.SubjectRepository;
 import ua.nure.mpj.lb2.requests.GroupCreateRequest;
 import ua.nure.mpj.lb2.requests.GroupUpdateRequest;
 import ua.nure.mpj.lb2.services.GroupService;
+import ua.nure.mpj.lb2.services.SearchService;
 
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -30,12 +43,29 @@ class MpjLb2GroupsTests {
     @Autowired
     private GroupService groupService;
 
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private SubjectRepository subjectRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     void setUp() {
         JdbcTestUtils.deleteFromTables(jdbcTemplate, "groups", "subjects", "schedule_items");
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
     }
 
     @Test
@@ -60,6 +90,44 @@ class MpjLb2GroupsTests {
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.id").value(group.getId()))
                 .andExpect(jsonPath("$.name").value("test_group"))
+                .andExpect(jsonPath("$.version").value(group.getVersion()))
+        ;
+    }
+
+    @Test
+    void createGroup_emptyName_fail() throws Exception {
+        mvc.perform(post("/groups/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new GroupCreateRequest(""))))
+                .andExpect(status().is(400))
+        ;
+        mvc.perform(post("/groups/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().is(400))
+        ;
+    }
+
+    @Test
+    void createGroups_bulk() throws Exception {
+        Group group = groupService.save(new Group("test_group1"));
+
+        mvc.perform(post("/groups/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(List.of(
+                                new GroupCreateRequest("test_group1"),
+                                new GroupCreateRequest("test_group2"),
+                                new GroupCreateRequest("test_group2")
+                        ))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+        ;
+
+        mvc.perform(get("/groups/"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].id").value(group.getId()))
+                .andExpect(jsonPath("$.items[1].name").value("test_group2"))
         ;
     }
 
@@ -133,6 +201,36 @@ class MpjLb2GroupsTests {
         ;
     }
 
+    @Test
+    void listGroups_withoutCount() throws Exception {
+        Group group1 = groupService.save(new Group("test_group1"));
+        Group group2 = groupService.save(new Group("test_group2"));
+        Group group3 = groupService.save(new Group("test_group3"));
+
+        mvc.perform(get("/groups/?page=1&page_size=2&with_count=false"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.count").doesNotExist())
+                .andExpect(jsonPath("$.has_more").value(true))
+                .andExpect(jsonPath("$.items[0].id").value(group1.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(group2.getId()))
+        ;
+
+        mvc.perform(get("/groups/?page=2&page_size=2&with_count=false"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.has_more").value(false))
+                .andExpect(jsonPath("$.items[0].id").value(group3.getId()))
+        ;
+
+        mvc.perform(get("/groups/?approximate_count=true"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(3)))
+                .andExpect(jsonPath("$.count").isNumber())
+                .andExpect(jsonPath("$.has_more").value(false))
+        ;
+    }
+
     @Test
     void getGroup_ok() throws Exception {
         Group group = new Group("test_group");
@@ -146,6 +244,37 @@ class MpjLb2GroupsTests {
         ;
     }
 
+    @Test
+    void getGroup_secondLevelCache() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        entityManagerFactory.unwrap(SessionFactory.class).getStatistics().clear();
+
+        mvc.perform(get("/groups/{groupId}", group.getId())).andExpect(status().is(200));
+        mvc.perform(get("/groups/{groupId}", group.getId())).andExpect(status().is(200));
+
+        mvc.perform(get("/caches/regions"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$[?(@.region == 'group')].hits", contains(1)))
+        ;
+
+        groupService.getByName("test_group");
+        groupService.deleteById(group.getId());
+
+        assertTrue(groupService.get(group.getId()).isEmpty());
+        assertTrue(groupService.getByName("test_group").isEmpty());
+    }
+
+    @Test
+    void metrics_prometheus() throws Exception {
+        mvc.perform(get("/groups/")).andExpect(status().is(200));
+
+        mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().is(200))
+                .andExpect(content().string(containsString("service_calls_seconds_count")))
+                .andExpect(content().string(containsString("http_serialization_seconds")))
+        ;
+    }
+
     @Test
     void getGroup_notFound_fail() throws Exception {
         Group group = new Group("test_group");
@@ -169,6 +298,70 @@ class MpjLb2GroupsTests {
                 .andExpect(jsonPath("$.id").value(group.getId()))
                 .andExpect(jsonPath("$.name").value("test_123"))
         ;
+
+        mvc.perform(get(String.format("/groups/%d", group.getId())))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.name").value("test_123"))
+        ;
+    }
+
+    @Test
+    void searchGroups_prefixAndFuzzy() throws Exception {
+        Group stale = groupService.save(new Group("PZPI-22-1"));
+        Group group2 = groupService.save(new Group("PZPI-22-2"));
+        Group group3 = groupService.save(new Group("PZPI-22-3"));
+        Group other = groupService.save(new Group("KIUKI-21-1"));
+
+        mvc.perform(get("/search/?q=kiuki&type=group"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.subjects").doesNotExist())
+                .andExpect(jsonPath("$.groups", hasSize(1)))
+                .andExpect(jsonPath("$.groups[0].id").value(other.getId()))
+        ;
+
+        mvc.perform(get("/search/?q=kiuky-21&type=group"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.groups[0].id").value(other.getId()))
+        ;
+
+        // Deleted behind the index's back, its place goes to the next match
+        jdbcTemplate.update("DELETE FROM groups WHERE id = ?", stale.getId());
+        mvc.perform(get("/search/?q=pzpi-22&type=group&limit=2"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.groups", hasSize(2)))
+                .andExpect(jsonPath("$.groups[0].id").value(group2.getId()))
+                .andExpect(jsonPath("$.groups[1].id").value(group3.getId()))
+        ;
+    }
+
+    @Test
+    void searchGroups_indexNotBuilt() {
+        Group group = groupService.save(new Group("PZPI-22-1"));
+        groupService.save(new Group("KIUKI-21-1"));
+
+        // Fresh instances have not seen ApplicationReadyEvent, the first search builds the index itself
+        SearchService inMemory = new SearchService(groupRepository, subjectRepository, 100000, transactionManager);
+        assertEquals(List.of(group.getId()), inMemory.searchGroups("pzpi", 10).stream().map(Group::getId).toList());
+
+        // Over the limit the database is queried, which must work without pg_trgm
+        SearchService database = new SearchService(groupRepository, subjectRepository, 0, transactionManager);
+        assertEquals(List.of(group.getId()), database.searchGroups("pzpi", 10).stream().map(Group::getId).toList());
+        assertEquals(List.of(group.getId()), database.searchGroups("22-1", 10).stream().map(Group::getId).toList());
+        assertEquals(List.of(), database.searchGroups("100%", 10));
+    }
+
+    @Test
+    void getGroup_notFoundThenCreated_ok() throws Exception {
+        mvc.perform(get("/groups/1000000"))
+                .andExpect(status().is(404))
+        ;
+
+        jdbcTemplate.update("INSERT INTO groups (id, name, version) VALUES (1000000, 'late_group', 0)");
+
+        mvc.perform(get("/groups/1000000"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.name").value("late_group"))
+        ;
     }
 
     @Test
@@ -222,4 +415,25 @@ class MpjLb2GroupsTests {
         ;
     }
 
+    @Test
+    void deleteGroups_bulk() throws Exception {
+        Group group1 = groupService.save(new Group("test_group1"));
+        Group group2 = groupService.save(new Group("test_group2"));
+        Group group3 = groupService.save(new Group("test_group3"));
+
+        mvc.perform(delete("/groups/").param("ids", String.valueOf(group1.getId()), String.valueOf(group2.getId()), String.valueOf(group3.getId() + 100)))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.deleted").value(2))
+                .andExpect(jsonPath("$.schedule_items_deleted").value(0))
+        ;
+
+        mvc.perform(get("/groups/{groupId}", group1.getId()))
+                .andExpect(status().is(404))
+        ;
+        mvc.perform(get("/groups/"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id").value(group3.getId()))
+        ;
+    }
 }
@@ -0,0 +1,121 @@
+package ua.nure.mpj.lb2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.nure.mpj.lb2.config.ReadYourWritesInterceptor;
+import ua.nure.mpj.lb2.requests.GroupCreateRequest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// The "replica" is the test database itself, what matters is which pool a connection is taken from
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = MpjLb2Application.class)
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "app.datasource.replica.url=${spring.datasource.url}"
+})
+class MpjLb2ReplicaRoutingTests {
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "schedule_items", "groups", "subjects", "change_log");
+    }
+
+    @Test
+    void readOnlyTransaction_replica() {
+        transaction(true).executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT count(*) FROM groups", Long.class);
+            assertEquals(1, activeConnections(replicaDataSource));
+            assertEquals(0, activeConnections(primaryDataSource));
+        });
+    }
+
+    @Test
+    void readWriteTransaction_primary() {
+        transaction(false).executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT count(*) FROM groups", Long.class);
+            assertEquals(1, activeConnections(primaryDataSource));
+            assertEquals(0, activeConnections(replicaDataSource));
+        });
+    }
+
+    @Test
+    void readOnlyTransaction_pinnedClient_primary() {
+        ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(Duration.ofMinutes(1));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/groups/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        try {
+            transaction(true).executeWithoutResult(status -> {
+                jdbcTemplate.queryForObject("SELECT count(*) FROM groups", Long.class);
+                assertEquals(1, activeConnections(primaryDataSource));
+                assertEquals(0, activeConnections(replicaDataSource));
+            });
+        } finally {
+            interceptor.afterCompletion(request, response, null, null);
+        }
+    }
+
+    @Test
+    void createGroup_listWithoutETag() throws Exception {
+        mvc.perform(post("/groups/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new GroupCreateRequest("test_group"))))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.name").value("test_group"))
+        ;
+
+        // The list is read from the replica, a tag from the change counters could pin an outdated page
+        mvc.perform(get("/groups/"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items[0].name").value("test_group"))
+                .andExpect(header().doesNotExist("ETag"))
+        ;
+    }
+
+    private TransactionTemplate transaction(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template;
+    }
+
+    private static int activeConnections(HikariDataSource dataSource) {
+        return dataSource.getHikariPoolMXBean() == null ? 0 : dataSource.getHikariPoolMXBean().getActiveConnections();
+    }
+}
@@ -1,16 +1,27 @@
 package ua.nure.mpj.lb2;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.jdbc.JdbcTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ua.nure.mpj.lb2.entities.Group;
 import ua.nure.mpj.lb2.entities.ScheduleItem;
 import ua.nure.mpj.lb2.entities.Subject;
@@ -18,13 +29,20 @@ import ua.nure.mpj.lb2.requests.GroupCreateRequest;
 import ua.nure.mpj.lb2.requests.GroupUpdateRequest;
 import ua.nure.mpj.lb2.requests.ScheduleItemCreateRequest;
 import ua.nure.mpj.lb2.requests.ScheduleItemUpdateRequest;
+import ua.nure.mpj.lb2.services.ChangeCounterService;
+import ua.nure.mpj.lb2.services.ChangeLogService;
 import ua.nure.mpj.lb2.services.GroupService;
 import ua.nure.mpj.lb2.services.ScheduleItemService;
 import ua.nure.mpj.lb2.services.SubjectService;
 
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -41,15 +59,33 @@ class MpjLb2ScheduleTests {
     @Autowired
     private SubjectService subjectService;
 
-    @Autowired
+    // Spied so that a test can write between the import's slot preload and its batch insert
+    @MockitoSpyBean
     private ScheduleItemService scheduleService;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ChangeCounterService changeCounterService;
+
+    @Autowired
+    private ChangeLogService changeLogService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     void setUp() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "schedule_items", "groups", "subjects");
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "schedule_items", "groups", "subjects", "change_log");
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
     }
 
     @Test
@@ -126,6 +162,452 @@ class MpjLb2ScheduleTests {
         ;
     }
 
+    @Test
+    void listSchedules_normalized() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item1 = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)1, ScheduleItem.Type.LAB));
+        ScheduleItem item2 = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)2, ScheduleItem.Type.LECTURE));
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems?view=normalized", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.items[0].id").value(item1.getId()))
+                .andExpect(jsonPath("$.items[0].group_id").value(group.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(item2.getId()))
+                .andExpect(jsonPath("$.items[1].subject_id").value(subject.getId()))
+                .andExpect(jsonPath("$.groups.length()").value(1))
+                .andExpect(jsonPath("$.groups['" + group.getId() + "'].name").value("test_group"))
+                .andExpect(jsonPath("$.subjects['" + subject.getId() + "'].name").value("test_subject"))
+        ;
+
+        byte[] cbor = mvc.perform(get("/groups/{groupId}/scheduleItems?view=normalized", group.getId()).accept("application/cbor"))
+                .andExpect(status().is(200))
+                .andExpect(content().contentTypeCompatibleWith("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode body = new ObjectMapper(new CBORFactory()).readTree(cbor);
+        assertEquals(2, body.get("items").size());
+        assertEquals(group.getId(), body.get("items").get(0).get("group_id").asLong());
+
+        // Empty pages of other lists keep their own shape
+        mvc.perform(get("/groups/?view=normalized&page=100"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(0)))
+                .andExpect(jsonPath("$.groups").doesNotExist())
+        ;
+        mvc.perform(get("/subjects/?view=normalized&page=100"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(0)))
+                .andExpect(jsonPath("$.subjects").doesNotExist())
+        ;
+    }
+
+    @Test
+    void subjectStatistics_ok() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Group group2 = groupService.save(new Group("test_group2"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)1, ScheduleItem.Type.LECTURE));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-21"), (byte)1, ScheduleItem.Type.LECTURE));
+        scheduleService.save(new ScheduleItem(group2, subject, Date.valueOf("2025-06-02"), (byte)1, ScheduleItem.Type.LAB));
+
+        mvc.perform(get("/subjects/{subjectId}/scheduleItems", subject.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(3)))
+                .andExpect(jsonPath("$.count").value(3))
+        ;
+
+        mvc.perform(get("/subjects/{subjectId}/statistics", subject.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.totals.LECTURE").value(2))
+                .andExpect(jsonPath("$.totals.LAB").value(1))
+                .andExpect(jsonPath("$.rows", hasSize(2)))
+                .andExpect(jsonPath("$.rows[0].group_id").value(group.getId()))
+                .andExpect(jsonPath("$.rows[0].month").value("2025-05"))
+                .andExpect(jsonPath("$.rows[0].count").value(2))
+                .andExpect(jsonPath("$.rows[1].month").value("2025-06"))
+        ;
+
+        scheduleService.save(new ScheduleItem(group2, subject, Date.valueOf("2025-06-03"), (byte)1, ScheduleItem.Type.EXAM));
+        mvc.perform(get("/subjects/{subjectId}/statistics?from=2025-06-01&to=2025-06-30", subject.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.totals.LECTURE").doesNotExist())
+                .andExpect(jsonPath("$.totals.EXAM").value(1))
+                .andExpect(jsonPath("$.rows", hasSize(2)))
+        ;
+    }
+
+    @Test
+    void listSchedules_cursor() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item1 = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)1, ScheduleItem.Type.LAB));
+        ScheduleItem item2 = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)2, ScheduleItem.Type.LAB));
+        ScheduleItem item3 = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+
+        MvcResult result = mvc.perform(get("/scheduleItems/?after_id=0&page_size=2&with_count=true"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.count").value(3))
+                .andExpect(jsonPath("$.items[0].id").value(item1.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(item2.getId()))
+                .andExpect(jsonPath("$.next_cursor").isString())
+                .andReturn();
+        String cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.next_cursor");
+
+        mvc.perform(get("/scheduleItems/?page_size=2&cursor={cursor}", cursor))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id").value(item3.getId()))
+                .andExpect(jsonPath("$.next_cursor").doesNotExist())
+                .andExpect(jsonPath("$.count").doesNotExist())
+        ;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems?page_size=2&cursor={cursor}", group.getId(), cursor))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.count").doesNotExist())
+                .andExpect(jsonPath("$.items[0].id").value(item3.getId()))
+        ;
+
+        mvc.perform(get("/scheduleItems/?cursor=not-a-cursor"))
+                .andExpect(status().is(400))
+        ;
+    }
+
+    @Test
+    void listSchedules_singleStatement() throws Exception {
+        Subject subject1 = subjectService.save(new Subject("test_subject1", "ts1"));
+        Subject subject2 = subjectService.save(new Subject("test_subject2", "ts2"));
+        for(int i = 0; i < 4; i++) {
+            Group group = groupService.save(new Group("test_group" + i));
+            scheduleService.save(new ScheduleItem(group, i % 2 == 0 ? subject1 : subject2, new Date(2025, 4, 24), (byte)i, ScheduleItem.Type.LAB));
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Full pages of different sizes: groups and subjects come with the items, so the statement count
+        // does not depend on the number of rows
+        statistics.clear();
+        mvc.perform(get("/scheduleItems/?page_size=2&with_count=false"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+        ;
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        mvc.perform(get("/scheduleItems/?page_size=4&with_count=false"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(4)))
+        ;
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // A full page with a count adds exactly the COUNT query
+        statistics.clear();
+        mvc.perform(get("/scheduleItems/?page_size=2"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.count").value(4))
+        ;
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void importSchedules_ok() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ObjectMapper mapper = new ObjectMapper();
+
+        mvc.perform(post("/scheduleItems/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(List.of(
+                                new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LAB, new Date(2025, 4, 24), (byte) 1),
+                                new ScheduleItemCreateRequest(group.getId() + 1000, subject.getId(), ScheduleItem.Type.LAB, new Date(2025, 4, 24), (byte) 2),
+                                new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.EXAM, new Date(2025, 4, 24), (byte) 3)
+                        ))))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.errors", hasSize(1)))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+        ;
+
+        String ndjson = mapper.writeValueAsString(new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LAB, new Date(2025, 4, 25), (byte) 1))
+                + "\n" + mapper.writeValueAsString(new ScheduleItemCreateRequest(group.getId(), subject.getId() + 1000, ScheduleItem.Type.LAB, new Date(2025, 4, 25), (byte) 2))
+                + "\n";
+        mvc.perform(post("/scheduleItems/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.errors", hasSize(1)))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.count").value(3))
+        ;
+    }
+
+    @Test
+    void importSchedules_slotTakenAfterPreload() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        Date date = new Date(2025, 4, 24);
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            jdbcTemplate.update("INSERT INTO schedule_items (id, version, group_id, subject_id, date, position, type) " +
+                    "VALUES (nextval('schedule_items_seq'), 0, ?, ?, ?, 1, ?)", group.getId(), subject.getId(), date, ScheduleItem.Type.LECTURE.ordinal());
+            return null;
+        }).when(scheduleService).loadSlots(any(), any(), any());
+
+        mvc.perform(post("/scheduleItems/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(List.of(
+                                new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LAB, date, (byte) 1),
+                                new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LAB, date, (byte) 2)
+                        ))))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.errors", hasSize(1)))
+                .andExpect(jsonPath("$.errors[0].index").value(0))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.count").value(2))
+        ;
+    }
+
+    @Test
+    void exportSchedules_ok() throws Exception {
+        Group group1 = groupService.save(new Group("test_group1"));
+        Group group2 = groupService.save(new Group("test_group2"));
+        Subject subject = subjectService.save(new Subject("test, subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group1, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+        scheduleService.save(new ScheduleItem(group2, subject, new Date(2025, 4, 24), (byte)4, ScheduleItem.Type.LAB));
+
+        String csv = mvc.perform(get("/scheduleItems/export?format=csv&group_id={groupId}", group1.getId()))
+                .andExpect(status().is(200))
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = csv.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(String.format("%d,%d,test_group1,%d,\"test, subject\",ts1,%s,3,LAB", item.getId(), group1.getId(), subject.getId(), item.getDate()), lines[1]);
+
+        String ndjson = mvc.perform(get("/scheduleItems/export"))
+                .andExpect(status().is(200))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(2, ndjson.split("\n").length);
+
+        mvc.perform(get("/scheduleItems/export?format=xml"))
+                .andExpect(status().is(400))
+        ;
+    }
+
+    @Test
+    void groupCalendar_ok() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test, subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-26"), (byte)3, ScheduleItem.Type.LAB));
+        ScheduleItem late = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-26"), (byte)9, ScheduleItem.Type.LECTURE));
+
+        MvcResult result = mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(content().contentTypeCompatibleWith("text/calendar"))
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+        String calendar = result.getResponse().getContentAsString();
+        String etag = result.getResponse().getHeader("ETag");
+        assertTrue(calendar.startsWith("BEGIN:VCALENDAR\r\n"));
+        assertTrue(calendar.contains(String.format("UID:schedule-item-%d@mpj-lb2\r\n", item.getId())));
+        assertTrue(calendar.contains("DTSTART:20250526T081500Z\r\nDTEND:20250526T095000Z\r\n"));
+        assertTrue(calendar.contains("SUMMARY:test\\, subject (lab)\r\n"));
+        assertTrue(calendar.contains("DTSTART;VALUE=DATE:20250526\r\nDTEND;VALUE=DATE:20250527\r\n"));
+        assertTrue(calendar.endsWith("END:VCALENDAR\r\n"));
+
+        mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(304))
+        ;
+
+        scheduleService.deleteById(late.getId());
+        calendar = mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getContentAsString();
+        assertFalse(calendar.contains(String.format("UID:schedule-item-%d@mpj-lb2", late.getId())));
+
+        mvc.perform(get("/groups/{groupId}/calendar.ics", 0))
+                .andExpect(status().is(404))
+        ;
+    }
+
+    @Test
+    void groupCalendar_etagScopedToGroup() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Group other = groupService.save(new Group("test_group2"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        Subject unused = subjectService.save(new Subject("test_subject2", "ts2"));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-26"), (byte)3, ScheduleItem.Type.LAB));
+
+        String etag = mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getHeader("ETag");
+
+        other.setName("test_group3");
+        groupService.save(other);
+        unused.setName("test_subject3");
+        subjectService.save(unused);
+        mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(304))
+        ;
+
+        subject.setName("renamed_subject");
+        subject = subjectService.save(subject);
+        MvcResult result = mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(200))
+                .andReturn();
+        assertTrue(result.getResponse().getContentAsString().contains("SUMMARY:renamed_subject (lab)\r\n"));
+        etag = result.getResponse().getHeader("ETag");
+
+        group.setName("renamed_group");
+        groupService.save(group);
+        mvc.perform(get("/groups/{groupId}/calendar.ics", group.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(200))
+        ;
+    }
+
+    @Test
+    void listSchedules_dateRange() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item1 = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)2, ScheduleItem.Type.LAB));
+        ScheduleItem item2 = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)1, ScheduleItem.Type.LECTURE));
+        ScheduleItem item3 = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-19"), (byte)4, ScheduleItem.Type.LAB));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-26"), (byte)1, ScheduleItem.Type.LAB));
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems/range?from=2025-05-19&to=2025-05-25", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(3)))
+                .andExpect(jsonPath("$.count").value(3))
+                .andExpect(jsonPath("$.items[0].id").value(item3.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(item2.getId()))
+                .andExpect(jsonPath("$.items[2].id").value(item1.getId()))
+        ;
+
+        mvc.perform(get("/subjects/{subjectId}/scheduleItems/range?from=2025-05-20&to=2025-05-20", subject.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].id").value(item2.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(item1.getId()))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems/range?from=2025-05-25&to=2025-05-19", group.getId()))
+                .andExpect(status().is(400))
+        ;
+    }
+
+    @Test
+    void groupTimetable_incremental() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item1 = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-19"), (byte)1, ScheduleItem.Type.LECTURE));
+
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-21", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.week_start").value("2025-05-19"))
+                .andExpect(jsonPath("$.days", hasSize(7)))
+                .andExpect(jsonPath("$.days[0]", hasSize(1)))
+                .andExpect(jsonPath("$.days[0][0].subject").value("ts1"))
+                .andExpect(jsonPath("$.days[0][0].type").value(ScheduleItem.Type.LECTURE.name()))
+        ;
+
+        ScheduleItem item2 = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-21"), (byte)2, ScheduleItem.Type.LAB));
+        scheduleService.deleteById(item1.getId());
+
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-19", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.days[0]", hasSize(0)))
+                .andExpect(jsonPath("$.days[2]", hasSize(1)))
+                .andExpect(jsonPath("$.days[2][0].item_id").value(item2.getId()))
+                .andExpect(jsonPath("$.days[2][0].position").value(2))
+        ;
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", item2.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"date\": \"2025-05-26\"}"))
+                .andExpect(status().is(200))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-19", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.days[2]", hasSize(0)))
+        ;
+
+        Group other = groupService.save(new Group("other_group"));
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-26", other.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.days[0]", hasSize(0)))
+        ;
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", item2.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("{\"group_id\": %d}", other.getId())))
+                .andExpect(status().is(200))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-26", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.days[0]", hasSize(0)))
+        ;
+        mvc.perform(get("/groups/{groupId}/timetable?date=2025-05-26", other.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.days[0]", hasSize(1)))
+                .andExpect(jsonPath("$.days[0][0].item_id").value(item2.getId()))
+        ;
+    }
+
+    @Test
+    void createSchedule_slotConflict() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)3, ScheduleItem.Type.LAB));
+        ScheduleItem other = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)4, ScheduleItem.Type.LAB));
+        ObjectMapper mapper = new ObjectMapper();
+
+        mvc.perform(post("/scheduleItems/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(new ScheduleItemCreateRequest(group.getId(), subject.getId(), ScheduleItem.Type.LECTURE, Date.valueOf("2025-05-20"), (byte) 3))))
+                .andExpect(status().is(409))
+        ;
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", other.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(new ScheduleItemUpdateRequest(null, null, null, null, (byte) 3))))
+                .andExpect(status().is(409))
+        ;
+
+        mvc.perform(post("/scheduleItems/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" +
+                                "{\"group_id\": " + group.getId() + ", \"subject_id\": " + subject.getId() + ", \"type\": \"LAB\", \"date\": \"2025-05-20\", \"position\": 3}," +
+                                "{\"group_id\": " + group.getId() + ", \"subject_id\": " + subject.getId() + ", \"type\": \"LAB\", \"date\": \"2025-05-21\", \"position\": 1}," +
+                                "{\"group_id\": " + group.getId() + ", \"subject_id\": " + subject.getId() + ", \"type\": \"LAB\", \"date\": \"2025-05-21\", \"position\": 1}" +
+                                "]"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.errors", hasSize(2)))
+                .andExpect(jsonPath("$.errors[0].index").value(0))
+                .andExpect(jsonPath("$.errors[1].index").value(2))
+        ;
+
+        mvc.perform(get("/scheduleItems/conflicts"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(0)))
+        ;
+    }
+
     @Test
     void getSchedule_ok() throws Exception {
         Group group = groupService.save(new Group("test_group"));
@@ -143,6 +625,145 @@ class MpjLb2ScheduleTests {
         ;
     }
 
+    @Test
+    void getSchedule_notModified() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+
+        String etag = mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()))
+                .andExpect(status().is(200))
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        String listEtag = mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(304))
+        ;
+        mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()).header("If-None-Match", listEtag))
+                .andExpect(status().is(304))
+        ;
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", item.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new ScheduleItemUpdateRequest(null, null, ScheduleItem.Type.EXAM, null, null))))
+                .andExpect(status().is(200))
+        ;
+
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()).header("If-None-Match", etag))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.type").value(ScheduleItem.Type.EXAM.name()))
+        ;
+        mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()).header("If-None-Match", listEtag))
+                .andExpect(status().is(200))
+        ;
+    }
+
+    @Test
+    void getSchedule_notModified_notFound() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        long missingId = group.getId() + 100;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems", missingId).header("If-None-Match", changeCounterService.groupScheduleItemsETag(missingId)))
+                .andExpect(status().is(404))
+        ;
+        mvc.perform(get("/groups/{groupId}/calendar.ics", missingId).header("If-None-Match", changeCounterService.groupScheduleItemsETag(missingId)))
+                .andExpect(status().is(404))
+        ;
+    }
+
+    @Test
+    void listChanges_ok() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+        scheduleService.deleteById(item.getId());
+
+        MvcResult result = mvc.perform(get("/changes/?since=0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].entity_type").value("GROUP"))
+                .andExpect(jsonPath("$[1].entity_type").value("SUBJECT"))
+                .andExpect(jsonPath("$[2].entity_type").value("SCHEDULE_ITEM"))
+                .andExpect(jsonPath("$[2].operation").value("CREATE"))
+                .andExpect(jsonPath("$[2].group_id").value(group.getId()))
+                .andExpect(jsonPath("$[3].entity_id").value(item.getId()))
+                .andExpect(jsonPath("$[3].operation").value("DELETE"))
+                .andReturn().getResponse().getContentAsString();
+
+        long last = ((Number) JsonPath.read(body, "$[3].id")).longValue();
+        result = mvc.perform(get("/changes/?since={since}", last))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(0)))
+        ;
+    }
+
+    @Test
+    void listChanges_waitersAtDifferentPositions() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        List<Long> ids = new ArrayList<>();
+        for(byte position = 1; position <= 3; position++) {
+            ids.add(scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-19"), position, ScheduleItem.Type.LAB)).getId());
+        }
+
+        String body = mvc.perform(asyncDispatch(mvc.perform(get("/changes/?since=0")).andReturn()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(5)))
+                .andReturn().getResponse().getContentAsString();
+        long last = ((Number) JsonPath.read(body, "$[4].id")).longValue();
+
+        MvcResult head = mvc.perform(get("/changes/?since={since}&limit=1&wait=10", last))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult ahead = mvc.perform(get("/changes/?since={since}&limit=1&wait=10", last + 2))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // One transaction, three consecutive entries
+        scheduleService.deleteAllById(ids);
+
+        mvc.perform(asyncDispatch(head))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(last + 1))
+        ;
+        mvc.perform(asyncDispatch(ahead))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(last + 3))
+        ;
+    }
+
+    @Test
+    void listChanges_heldBackByRunningTransaction() throws Exception {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            groupService.save(new Group("test_group1"));
+
+            // Takes a larger id and commits first
+            Thread thread = new Thread(() -> groupService.save(new Group("test_group2")));
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            assertEquals(0, changeLogService.list(0, 10).size());
+        });
+
+        assertEquals(2, changeLogService.list(0, 10).size());
+    }
+
     @Test
     void getSchedule_notFound() throws Exception {
         Group group = groupService.save(new Group("test_group"));
@@ -193,6 +814,58 @@ class MpjLb2ScheduleTests {
         ;
     }
 
+    @Test
+    void deleteSchedules_dateRange() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Group group2 = groupService.save(new Group("test_group2"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-20"), (byte)1, ScheduleItem.Type.LAB));
+        scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-05-21"), (byte)1, ScheduleItem.Type.LAB));
+        ScheduleItem kept = scheduleService.save(new ScheduleItem(group, subject, Date.valueOf("2025-06-02"), (byte)1, ScheduleItem.Type.LAB));
+        ScheduleItem otherGroup = scheduleService.save(new ScheduleItem(group2, subject, Date.valueOf("2025-05-20"), (byte)1, ScheduleItem.Type.LAB));
+
+        mvc.perform(delete("/scheduleItems/?group_id={groupId}&from=2025-05-01&to=2025-05-31", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.deleted").value(2))
+        ;
+
+        mvc.perform(get("/groups/{groupId}/scheduleItems", group.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id").value(kept.getId()))
+        ;
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", otherGroup.getId()))
+                .andExpect(status().is(200))
+        ;
+
+        mvc.perform(delete("/scheduleItems/?from=2025-05-01&to=2025-05-31"))
+                .andExpect(status().is(400))
+        ;
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", otherGroup.getId()))
+                .andExpect(status().is(200))
+        ;
+
+        mvc.perform(delete("/scheduleItems/?from=2025-05-01&to=2025-05-31&all=true"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.deleted").value(1))
+        ;
+    }
+
+    @Test
+    void deleteGroup_restricted() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+
+        mvc.perform(delete("/groups/").param("ids", String.valueOf(group.getId())))
+                .andExpect(status().is(409))
+        ;
+
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()))
+                .andExpect(status().is(200))
+        ;
+    }
+
     @Test
     void updateSchedule_group_ok() throws Exception {
         Group group = groupService.save(new Group("test_group"));
@@ -249,6 +922,37 @@ class MpjLb2ScheduleTests {
         ;
     }
 
+    @Test
+    void updateSchedule_versionConflict() throws Exception {
+        Group group = groupService.save(new Group("test_group"));
+        Subject subject = subjectService.save(new Subject("test_subject", "ts1"));
+        ScheduleItem item = scheduleService.save(new ScheduleItem(group, subject, new Date(2025, 4, 24), (byte)3, ScheduleItem.Type.LAB));
+
+        String etag = mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()))
+                .andExpect(status().is(200))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", item.getId())
+                        .header("If-Match", etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new ScheduleItemUpdateRequest(null, null, ScheduleItem.Type.EXAM, null, null))))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.type").value(ScheduleItem.Type.EXAM.name()))
+        ;
+
+        mvc.perform(patch("/scheduleItems/{scheduleItemId}", item.getId())
+                        .header("If-Match", etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(new ScheduleItemUpdateRequest(null, null, ScheduleItem.Type.LECTURE, null, null))))
+                .andExpect(status().is(409))
+        ;
+
+        mvc.perform(get("/scheduleItems/{scheduleItemId}", item.getId()))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.type").value(ScheduleItem.Type.EXAM.name()))
+        ;
+    }
+
     @Test
     void updateSchedule_group_notFound() throws Exception {
         Group group = groupService.save(new Group("test_group"));
@@ -1,11 +1,14 @@
 package ua.nure.mpj.lb2;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.TestPropertySource;
@@ -33,9 +36,17 @@ class MpjLb2SubjectsTests {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     void setUp() {
         JdbcTestUtils.deleteFromTables(jdbcTemplate, "subjects", "subjects", "schedule_items");
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
     }
 
     @Test
@@ -62,6 +73,31 @@ class MpjLb2SubjectsTests {
         ;
     }
 
+    @Test
+    void searchSubjects_prefixAndFuzzy() throws Exception {
+        Subject math = subjectService.save(new Subject("Mathematical analysis", "MA"));
+        Subject physics = subjectService.save(new Subject("Physics", "PH"));
+        subjectService.save(new Subject("Philosophy", "PHIL"));
+
+        mvc.perform(get("/search/?q=math&type=subject"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.groups").doesNotExist())
+                .andExpect(jsonPath("$.subjects", hasSize(1)))
+                .andExpect(jsonPath("$.subjects[0].id").value(math.getId()))
+        ;
+
+        mvc.perform(get("/search/?q=physcs&type=subject"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.subjects[0].id").value(physics.getId()))
+        ;
+
+        subjectService.deleteById(physics.getId());
+        mvc.perform(get("/search/?q=physics&type=subject"))
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.subjects", hasSize(0)))
+        ;
+    }
+
     @Test
     void listSubjects_empty() throws Exception {
         mvc.perform(get("/subjects/"))
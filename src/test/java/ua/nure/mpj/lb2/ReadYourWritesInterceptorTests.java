@@ -0,0 +1,82 @@
+package ua.nure.mpj.lb2;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ua.nure.mpj.lb2.config.ReadYourWritesInterceptor;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadYourWritesInterceptorTests {
+    private final ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(Duration.ofMinutes(1));
+
+    @Test
+    void write_pinnedWhileHandled() {
+        MockHttpServletRequest request = request("POST", "client1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        assertTrue(ReadYourWritesInterceptor.isPinnedToPrimary());
+
+        interceptor.afterCompletion(request, response, null, null);
+        assertFalse(ReadYourWritesInterceptor.isPinnedToPrimary());
+    }
+
+    @Test
+    void readAfterWrite_sameClientPinned() {
+        handle(request("GET", "client1"));
+        assertFalse(handleAndCheck(request("GET", "client1")));
+
+        handle(request("PATCH", "client1"));
+
+        assertTrue(handleAndCheck(request("GET", "client1")));
+        assertFalse(handleAndCheck(request("GET", "client2")));
+    }
+
+    @Test
+    void readAfterWrite_remoteAddressFallback() {
+        MockHttpServletRequest write = new MockHttpServletRequest("DELETE", "/groups/1");
+        write.setRemoteAddr("10.0.0.1");
+        handle(write);
+
+        MockHttpServletRequest sameAddress = new MockHttpServletRequest("GET", "/groups/");
+        sameAddress.setRemoteAddr("10.0.0.1");
+        MockHttpServletRequest otherAddress = new MockHttpServletRequest("GET", "/groups/");
+        otherAddress.setRemoteAddr("10.0.0.2");
+
+        assertTrue(handleAndCheck(sameAddress));
+        assertFalse(handleAndCheck(otherAddress));
+    }
+
+    @Test
+    void asyncHandling_unpinsRequestThread() {
+        MockHttpServletRequest request = request("POST", "client1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        interceptor.afterConcurrentHandlingStarted(request, response, null);
+        assertFalse(ReadYourWritesInterceptor.isPinnedToPrimary());
+    }
+
+    private void handle(MockHttpServletRequest request) {
+        handleAndCheck(request);
+    }
+
+    // Returns whether the request was pinned while it was being handled
+    private boolean handleAndCheck(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, null);
+        boolean pinned = ReadYourWritesInterceptor.isPinnedToPrimary();
+        interceptor.afterCompletion(request, response, null, null);
+        return pinned;
+    }
+
+    private static MockHttpServletRequest request(String method, String clientId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/groups/");
+        request.addHeader("X-Client-Id", clientId);
+        return request;
+    }
+}
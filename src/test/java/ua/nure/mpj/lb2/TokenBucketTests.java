@@ -0,0 +1,79 @@
+package ua.nure.mpj.lb2;
+
+import org.junit.jupiter.api.Test;
+import ua.nure.mpj.lb2.utils.TokenBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTests {
+    private static final long INTERVAL = 100_000_000L;
+
+    @Test
+    void tryAcquire_burstThenWait() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(INTERVAL, bucket.tryAcquire(now));
+        assertEquals(INTERVAL / 2, bucket.tryAcquire(now + INTERVAL / 2));
+    }
+
+    @Test
+    void tryAcquire_refillsOverTime() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+        bucket.tryAcquire(now);
+        bucket.tryAcquire(now);
+
+        assertEquals(0, bucket.tryAcquire(now + INTERVAL));
+        assertEquals(INTERVAL, bucket.tryAcquire(now + INTERVAL));
+    }
+
+    @Test
+    void tryAcquire_idleDoesNotExceedCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long later = System.nanoTime() + 100 * INTERVAL;
+
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(INTERVAL, bucket.tryAcquire(later));
+    }
+
+    @Test
+    void tryAcquire_concurrent() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 50);
+        long now = System.nanoTime();
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for(int j = 0; j < 100; j++) {
+                    if(bucket.tryAcquire(now) == 0) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, acquired.get());
+    }
+}